@@ -0,0 +1,119 @@
+/*
+ベンチマークの実行手順：
+1. build.sbt が置かれた場所で sbt と入力する
+2. bench/jmh:run -i 10 -wi 5 -f 1 と入力する
+   一部だけ動かすときは bench/jmh:run -i 10 -wi 5 -f 1 .*ShapeBench.*
+   井戸の大きさを変えるときは -p width=10,40 -p height=20,200
+*/
+
+package tetris.bench
+
+import java.util.concurrent.TimeUnit
+
+import org.openjdk.jmh.annotations._
+
+import scala.util.Random
+
+import sdraw.Transparent
+
+import tetris._
+import tetris.{ShapeLib => S}
+
+// 井戸の大きさを変えて測るための共通の状態
+@State(Scope.Benchmark)
+class WellState {
+  @Param(Array("10", "20", "40"))
+  var width: Int = _
+
+  @Param(Array("10", "20", "200"))
+  var height: Int = _
+
+  var pile: S.Shape = _
+  var board: Board = _
+  var world: TetrisWorld = _
+  var piece: Board = _
+  var shape: S.Shape = _
+
+  // 下半分をでたらめに埋め、そのうち数行は揃えておく（種は固定）
+  @Setup(Level.Trial)
+  def setup(): Unit = {
+    val r = new Random(42)
+    pile = List.tabulate(height, width)((i, j) =>
+      if (i < height / 2) Transparent
+      else if (i % 4 == 0 || r.nextInt(3) > 0) S.colors(r.nextInt(S.colors.length))
+      else Transparent)
+    board = Board.fromShape(pile)
+    shape = S.shapeT
+    piece = Orientations.packed(shape)
+    world = TetrisWorld(((width / 2 - 1, height / 2 - 2), shape), board, Pieces(Rng(42)))
+  }
+}
+
+// ShapeLib とテトロミノ単体の操作
+@BenchmarkMode(Array(Mode.AverageTime))
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+class ShapeBench {
+  val specs: List[S.ShapeSpec] = S.shapeSpecs
+
+  @Benchmark
+  def make(): List[S.Shape] = specs.map(S.make)
+
+  @Benchmark
+  def rotateList(): S.Shape = Orientations.rotate(S.shapeZ)
+
+  @Benchmark
+  def rotateTable(): S.Shape = Orientations.rotated(S.shapeZ)
+
+  @Benchmark
+  def pack(): Board = Board.fromShape(S.shapeZ)
+}
+
+// 井戸全体に対する操作
+@BenchmarkMode(Array(Mode.AverageTime))
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+class WellBench {
+  @Benchmark
+  def showShape(s: WellState): String = S.showShape(s.pile)
+
+  @Benchmark
+  def fromShape(s: WellState): Board = Board.fromShape(s.pile)
+
+  @Benchmark
+  def toShape(s: WellState): S.Shape = s.board.toShape
+
+  @Benchmark
+  def overlap(s: WellState): Boolean = s.board.overlapAt(s.piece, s.width / 2 - 1, s.height / 2 - 2)
+
+  @Benchmark
+  def combine(s: WellState): Board = s.board.combineAt(s.piece, s.width / 2 - 1, s.height / 2 - 2)
+
+  @Benchmark
+  def collision(s: WellState): Boolean = s.world.collision(s.world)
+
+  @Benchmark
+  def eraseRows(s: WellState): S.Shape = s.world.eraseRows(s.pile)
+
+  @Benchmark
+  def eraseFullRows(s: WellState): Board = s.board.eraseFullRows
+
+  @Benchmark
+  def tick(s: WellState): TetrisWorld = s.world.tick()
+}
+
+// 描画。draw.Canvas が JFrame を作るので、画面のある環境で動かす。
+@BenchmarkMode(Array(Mode.AverageTime))
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+class DrawBench {
+  @Setup(Level.Trial)
+  def setup(s: WellState): Unit = {
+    s.world._world.theCanvas = new draw.Canvas(A.BlockSize * s.width, A.BlockSize * s.height)
+  }
+
+  @Benchmark
+  def drawShape(s: WellState): Boolean = s.world.drawShape00(s.pile)
+
+  @Benchmark
+  def drawWorld(s: WellState): Boolean = s.world.draw()
+}
@@ -0,0 +1,44 @@
+package colors;
+
+import java.awt.Color;
+import java.util.concurrent.ConcurrentHashMap;
+
+//to share java.awt.Color instances: each ARGB value is turned into a Color only once
+public final class ColorCache {
+  private static final ConcurrentHashMap<Integer, Color> cache = new ConcurrentHashMap<>();
+
+  static {
+    // the colors returned by the classes in this package
+    Color[] named = { Color.black, Color.blue, Color.cyan, Color.darkGray, Color.green,
+        Color.lightGray, Color.magenta, Color.orange, Color.pink, Color.red,
+        Color.white, Color.yellow };
+    for (Color c : named)
+      cache.putIfAbsent(c.getRGB(), c);
+  }
+
+  private ColorCache() {
+  }
+
+  //to obtain the color of the given ARGB value
+  public static Color argb(int argb) {
+    Color c = cache.get(argb);
+    if (c == null) {
+      Color fresh = new Color(argb, true);
+      c = cache.putIfAbsent(argb, fresh);
+      if (c == null)
+        c = fresh;
+    }
+    return c;
+  }
+
+  //to obtain the color of the given red, green, blue and alpha components (0-255)
+  public static Color rgba(int r, int g, int b, int a) {
+    return argb(((a & 0xFF) << 24) | ((r & 0xFF) << 16) | ((g & 0xFF) << 8) | (b & 0xFF));
+  }
+
+  //to obtain the opaque color of the given hue, saturation and brightness,
+  //the same as Color.getHSBColor
+  public static Color hsb(float h, float s, float b) {
+    return argb(Color.HSBtoRGB(h, s, b));
+  }
+}
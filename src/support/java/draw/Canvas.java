@@ -6,6 +6,7 @@ import java.awt.BorderLayout;
 import java.awt.Color;
 import java.awt.Dimension;
 import java.awt.Graphics;
+import java.awt.Graphics2D;
 import java.awt.Image;
 import java.awt.Point;
 import java.awt.event.ActionEvent;
@@ -17,11 +18,13 @@ import java.awt.event.MouseListener;
 import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
 import java.awt.event.WindowListener;
+import java.awt.image.BufferStrategy;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.locks.ReentrantLock;
 
 import javax.imageio.ImageIO;
 import javax.swing.JButton;
@@ -41,6 +44,15 @@ public class Canvas {
   private JPanel panel;
   private String title;
   private boolean headless = false; //do not create window if it is on 
+  private CellRenderer cellRenderer;
+  private Graphics2D frameG; //shared by all drawing between beginFrame and endFrame
+  private int frameDepth = 0;
+  private int damageX0, damageY0, damageX1, damageY1; //region drawn in the current frame
+  //held while a frame is drawn and while the buffer is shown, so that a half-drawn frame is never shown
+  private final ReentrantLock frameLock = new ReentrantLock();
+  private boolean pageFlipping = false; //present through a BufferStrategy instead of Swing repaints
+  private java.awt.Canvas surface;
+  private BufferStrategy strategy;
 
   public Canvas(int width, int height, String title) {
     this.width = width;
@@ -59,56 +71,88 @@ public class Canvas {
 
   //to draw a circumference of a circle of the given radius at the given center with the given color 
   public boolean drawCircle(Posn center, int radius, IColor color) {
+    return drawCircle(center.x, center.y, radius, color);
+  }
+
+  //to draw a circumference of a circle of the given radius at (cx, cy) with the given color 
+  public boolean drawCircle(int cx, int cy, int radius, IColor color) {
     Graphics g = getG();
     g.setColor(color.getColor());
-    g.drawOval(center.x - radius, center.y - radius, radius + radius, radius + radius);
+    g.drawOval(cx - radius, cy - radius, radius + radius, radius + radius);
+    done(g, cx - radius, cy - radius, radius + radius + 1, radius + radius + 1);
     return true;
   }
 
   //to draw a filled circle of the given radius at the given center with the given color 
   public boolean drawDisk(Posn center, int radius, IColor color) {
+    return drawDisk(center.x, center.y, radius, color);
+  }
+
+  //to draw a filled circle of the given radius at (cx, cy) with the given color 
+  public boolean drawDisk(int cx, int cy, int radius, IColor color) {
     Graphics g = getG();
     g.setColor(color.getColor());
-    g.fillOval(center.x - radius, center.y - radius, radius + radius, radius + radius);
-    update();
+    g.fillOval(cx - radius, cy - radius, radius + radius, radius + radius);
+    done(g, cx - radius, cy - radius, radius + radius, radius + radius);
     return true;
   }
 
    //to draw a filled oval of the given radius at the given center with the given color 
     public boolean drawOval(Posn center, int radiusx, int radiusy, IColor color) {
+    return drawOval(center.x, center.y, radiusx, radiusy, color);
+  }
+
+  //to draw a filled oval of the given radius at (cx, cy) with the given color 
+  public boolean drawOval(int cx, int cy, int radiusx, int radiusy, IColor color) {
     Graphics g = getG();
     g.setColor(color.getColor());
-    g.fillOval(center.x - radiusx, center.y - radiusy, radiusx + radiusx, radiusy + radiusy);
-    update();
+    g.fillOval(cx - radiusx, cy - radiusy, radiusx + radiusx, radiusy + radiusy);
+    done(g, cx - radiusx, cy - radiusy, radiusx + radiusx, radiusy + radiusy);
     return true;
   }
 
   //to draw a line from the start to end with the given color
   public boolean drawLine(Posn start, Posn end, IColor color) {
+    return drawLine(start.x, start.y, end.x, end.y, color);
+  }
+
+  //to draw a line from (x0, y0) to (x1, y1) with the given color
+  public boolean drawLine(int x0, int y0, int x1, int y1, IColor color) {
     Graphics g = getG();
     g.setColor(color.getColor());
-    g.drawLine(start.x, start.y, end.x, end.y);
-    update();
+    g.drawLine(x0, y0, x1, y1);
+    done(g, Math.min(x0, x1), Math.min(y0, y1), Math.abs(x1 - x0) + 1, Math.abs(y1 - y0) + 1);
     return true;
   }
 
   //to draw a filled rectangle whose top-left corner is given as the topLeft,
   //with the given width, height and color.
   public boolean drawRect(Posn topLeft, int width, int height, IColor color) {
+    return drawRect(topLeft.x, topLeft.y, width, height, color);
+  }
+
+  //to draw a filled rectangle whose top-left corner is (x, y),
+  //with the given width, height and color.
+  public boolean drawRect(int x, int y, int width, int height, IColor color) {
     Graphics g = getG();
     g.setColor(color.getColor());
-    g.fillRect(topLeft.x, topLeft.y, width, height);
-    update();
+    g.fillRect(x, y, width, height);
+    done(g, x, y, width, height);
     return true;
   }
 
   //to draw a message at p
   public boolean drawString(Posn p, String message) {
+    return drawString(p.x, p.y, message);
+  }
+
+  //to draw a message at (x, y)
+  public boolean drawString(int x, int y, String message) {
     // getG().setColor(c.getColor());
     Graphics g = getG();
     g.setColor(Color.black);
-    g.drawString(message, p.x, p.y);
-    update();
+    g.drawString(message, x, y);
+    done(g, 0, 0, this.width, this.height);
     return true;
   }
 
@@ -129,17 +173,39 @@ public class Canvas {
     if (frame == null) {
       frame = new JFrame(this.title);
       frame.setSize(this.width, this.height);
-      panel = new JPanel() {
+      panel = new JPanel(new BorderLayout()) {
 
         @Override
         public void paint(Graphics g) {
-          Image img = getBuffer();
-          g.drawImage(img, 0, 0, panel.getWidth(), panel.getHeight(), 0, 0,
-              img.getWidth(null), img.getHeight(null), null);
+          if (pageFlipping) {
+            super.paint(g);
+            return;
+          }
+          frameLock.lock();
+          try {
+            blit(g, panel.getWidth(), panel.getHeight());
+          } finally {
+            frameLock.unlock();
+          }
         }
 
       };
       panel.setPreferredSize(new Dimension(this.width, this.height));
+      if (pageFlipping) {
+        surface = new java.awt.Canvas() {
+          @Override
+          public void paint(Graphics g) {
+            present();
+          }
+          @Override
+          public void update(Graphics g) {
+            present();
+          }
+        };
+        // keep the keyboard focus on the frame, where the key listener is
+        surface.setFocusable(false);
+        panel.add(surface, BorderLayout.CENTER);
+      }
       // p.setBackground(Color.white);
       frame.getContentPane().add(panel);
       frame.setDefaultCloseOperation(JFrame.HIDE_ON_CLOSE);
@@ -160,11 +226,107 @@ public class Canvas {
     return n;
   }
 
-  //to obtain a graphics context for drawing something on this canavs
-  private Graphics getG() {
+  //to obtain a graphics context for drawing something on this canavs;
+  //within a frame, the graphics of the frame is shared
+  Graphics getG() {
+    if (frameG != null)
+      return frameG;
     return getBuffer().getGraphics();
   }
 
+  //to finish drawing the given region with g obtained from getG: within a
+  //frame the region is remembered until endFrame, otherwise it is repainted now
+  void done(Graphics g, int x, int y, int w, int h) {
+    if (w <= 0 || h <= 0) {
+      if (g != frameG) g.dispose();
+      return;
+    }
+    if (g == frameG) {
+      if (damageX0 >= damageX1 || damageY0 >= damageY1) {
+        damageX0 = x; damageY0 = y; damageX1 = x + w; damageY1 = y + h;
+      } else {
+        damageX0 = Math.min(damageX0, x); damageY0 = Math.min(damageY0, y);
+        damageX1 = Math.max(damageX1, x + w); damageY1 = Math.max(damageY1, y + h);
+      }
+    } else {
+      g.dispose();
+      repaint(x, y, w, h);
+    }
+  }
+
+  //to start a frame: everything drawn until the matching endFrame shares one
+  //graphics context and is shown with a single repaint. Frames may be nested.
+  public void beginFrame() {
+    if (frameDepth++ == 0) {
+      frameLock.lock();
+      frameG = (Graphics2D) getBuffer().getGraphics();
+      damageX0 = damageY0 = damageX1 = damageY1 = 0;
+    }
+  }
+
+  //to finish a frame and repaint the region drawn in it
+  public void endFrame() {
+    if (frameDepth == 0 || --frameDepth > 0)
+      return;
+    frameG.dispose();
+    frameG = null;
+    try {
+      if (damageX0 < damageX1 && damageY0 < damageY1) {
+        int x0 = Math.max(0, damageX0), y0 = Math.max(0, damageY0);
+        int x1 = Math.min(this.width, damageX1), y1 = Math.min(this.height, damageY1);
+        if (x0 < x1 && y0 < y1)
+          repaint(x0, y0, x1 - x0, y1 - y0);
+      }
+    } finally {
+      frameLock.unlock();
+    }
+  }
+
+  //to copy the buffer onto g of the given size, scaling only when the size differs
+  private void blit(Graphics g, int w, int h) {
+    Image img = getBuffer();
+    if (w == this.width && h == this.height) {
+      g.drawImage(img, 0, 0, null);
+    } else {
+      g.drawImage(img, 0, 0, w, h, 0, 0, img.getWidth(null), img.getHeight(null), null);
+    }
+  }
+
+  //to turn the page flipping mode on; it must be called before the canvas is shown.
+  //In this mode each frame is flipped onto the screen through a BufferStrategy
+  //by the drawing thread, instead of being repainted by Swing.
+  public void setPageFlippingMode() {
+    if (frame != null)
+      throw new IllegalStateException("The method setPageFlippingMode() must be called before the canvas is shown");
+    this.pageFlipping = true;
+  }
+
+  //to show the buffer on the surface through the buffer strategy
+  private void present() {
+    if (surface == null || !surface.isDisplayable())
+      return;
+    frameLock.lock();
+    try {
+      if (strategy == null) {
+        surface.createBufferStrategy(2);
+        strategy = surface.getBufferStrategy();
+      }
+      do {
+        do {
+          Graphics g = strategy.getDrawGraphics();
+          try {
+            blit(g, surface.getWidth(), surface.getHeight());
+          } finally {
+            g.dispose();
+          }
+        } while (strategy.contentsRestored());
+        strategy.show();
+      } while (strategy.contentsLost());
+    } finally {
+      frameLock.unlock();
+    }
+  }
+
   //to create a window and show this canvas in it.
   public boolean show() {
     if (!headless) {
@@ -208,10 +370,6 @@ public class Canvas {
     return this.pause("Continue?");
   }
 
-  private void update() {
-    getFrame().repaint();
-  }
-
   //to represent a dialog window for pausing
   class OKDialog extends JDialog {
     private BlockingQueue<Integer> queue = new LinkedBlockingQueue();
@@ -278,12 +436,42 @@ public class Canvas {
   void repaint() {
     this.getFrame().repaint();
   }
+  //to repaint only the given region of this canvas (in canvas coordinates)
+  public void repaint(int x, int y, int w, int h) {
+    this.getFrame();
+    if (pageFlipping) {
+      present();
+      return;
+    }
+    int pw = this.panel.getWidth(), ph = this.panel.getHeight();
+    if (pw == this.width && ph == this.height) {
+      this.panel.repaint(x, y, w, h);
+    } else {
+      // the buffer is scaled to the panel; round outwards
+      int x0 = x * pw / this.width, y0 = y * ph / this.height;
+      int x1 = ((x + w) * pw + this.width - 1) / this.width;
+      int y1 = ((y + h) * ph + this.height - 1) / this.height;
+      this.panel.repaint(x0, y0, x1 - x0, y1 - y0);
+    }
+  }
+  //to obtain the cell renderer for a grid of cols x rows cells of the given size;
+  //the same renderer is returned as long as the grid does not change
+  public CellRenderer getCellRenderer(int cols, int rows, int cellSize) {
+    CellRenderer r = this.cellRenderer;
+    if (r == null || r.getCols() != cols || r.getRows() != rows || r.getCellSize() != cellSize) {
+      r = new CellRenderer(this, cols, rows, cellSize);
+      this.cellRenderer = r;
+    }
+    return r;
+  }
   void addWindowListener(WindowListener l) {
     this.getFrame().addWindowListener(l);
   }
   void addMouseListener(MouseListener l) {
     this.getFrame();
     this.panel.addMouseListener(l);
+    if (this.surface != null)
+      this.surface.addMouseListener(l);
   }
   public int getWidth() {
     this.getFrame();
@@ -0,0 +1,85 @@
+package draw;
+
+import java.awt.Graphics;
+
+import colors.IColor;
+
+// to draw a grid of equally sized cells onto a canvas, redrawing only the cells
+// whose color changed since the previous frame
+public class CellRenderer {
+  private final Canvas canvas;
+  private final int cols;
+  private final int rows;
+  private final int cellSize;
+  private IColor[] current; // what is on the canvas now (null = unknown)
+  private IColor[] next;    // the frame being built
+
+  CellRenderer(Canvas canvas, int cols, int rows, int cellSize) {
+    this.canvas = canvas;
+    this.cols = cols;
+    this.rows = rows;
+    this.cellSize = cellSize;
+    this.current = new IColor[cols * rows];
+    this.next = new IColor[cols * rows];
+  }
+
+  public int getCols() {
+    return cols;
+  }
+
+  public int getRows() {
+    return rows;
+  }
+
+  public int getCellSize() {
+    return cellSize;
+  }
+
+  //to set the color of the cell at (col, row) in the next frame; cells outside the grid are ignored
+  public void set(int col, int row, IColor color) {
+    if (0 <= col && col < cols && 0 <= row && row < rows) {
+      next[row * cols + col] = color;
+    }
+  }
+
+  //to set the color of every cell in the next frame
+  public void fill(IColor color) {
+    java.util.Arrays.fill(next, color);
+  }
+
+  //to forget what is on the canvas, so that the next frame is drawn in full
+  public void invalidate() {
+    java.util.Arrays.fill(current, null);
+  }
+
+  //to draw the cells that differ from the previous frame and repaint the
+  //union of them at once
+  public boolean render() {
+    int minCol = cols, minRow = rows, maxCol = -1, maxRow = -1;
+    Graphics g = null;
+    for (int row = 0; row < rows; row++) {
+      for (int col = 0; col < cols; col++) {
+        int k = row * cols + col;
+        IColor c = next[k];
+        if (c == null || sameColor(c, current[k])) continue;
+        if (g == null) g = canvas.getG();
+        g.setColor(c.getColor());
+        g.fillRect(col * cellSize, row * cellSize, cellSize, cellSize);
+        current[k] = c;
+        if (col < minCol) minCol = col;
+        if (col > maxCol) maxCol = col;
+        if (row < minRow) minRow = row;
+        if (row > maxRow) maxRow = row;
+      }
+    }
+    if (g != null) {
+      canvas.done(g, minCol * cellSize, minRow * cellSize,
+          (maxCol - minCol + 1) * cellSize, (maxRow - minRow + 1) * cellSize);
+    }
+    return true;
+  }
+
+  private static boolean sameColor(IColor a, IColor b) {
+    return a == b || (b != null && a.equals(b));
+  }
+}
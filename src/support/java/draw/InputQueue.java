@@ -0,0 +1,103 @@
+package draw;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// to pass input events from the AWT listeners to the world loop without locks:
+// a bounded ring buffer of primitive slots for any number of producers and one consumer.
+// When the ring is full, events go to an unbounded overflow list instead, so none is lost
+// and the producer never waits; each producer's events are still taken in order.
+final class InputQueue {
+  static final int KEY = 1;   // a = key code, b = key char
+  static final int CLICK = 2; // a = x, b = y in world coordinates
+
+  // to receive the events taken out of the queue
+  interface Handler {
+    void handle(int kind, int a, int b);
+  }
+
+  private final int mask;
+  private final int[] kinds;
+  private final int[] as;
+  private final int[] bs;
+  // sequences[i] == n: slot i is free for the producer claiming position n;
+  // sequences[i] == n + 1: slot i holds the event at position n
+  private final AtomicLongArray sequences;
+  private final AtomicLong tail = new AtomicLong(); // next position to claim
+  private long head = 0; // next position to take; touched by the consumer only
+  // events added while the ring was full (or while earlier ones were still here): {kind, a, b}
+  private final ConcurrentLinkedQueue<int[]> overflow = new ConcurrentLinkedQueue<int[]>();
+  private final AtomicLong spilled = new AtomicLong();
+
+  InputQueue(int capacity) {
+    if (capacity <= 0 || Integer.bitCount(capacity) != 1)
+      throw new IllegalArgumentException("The capacity of InputQueue must be a power of two, given " + capacity);
+    this.mask = capacity - 1;
+    this.kinds = new int[capacity];
+    this.as = new int[capacity];
+    this.bs = new int[capacity];
+    this.sequences = new AtomicLongArray(capacity);
+    for (int i = 0; i < capacity; i++)
+      sequences.set(i, i);
+  }
+
+  //to add an event without waiting, so the AWT event thread is never held up by a slow
+  //or stopped consumer; once an event has spilled to the overflow list, the later ones
+  //follow it there until the consumer has taken them all
+  void add(int kind, int a, int b) {
+    if (!overflow.isEmpty() || !offer(kind, a, b)) {
+      overflow.add(new int[] { kind, a, b });
+      spilled.incrementAndGet();
+    }
+  }
+
+  //to add an event to the ring; false when the ring is full
+  private boolean offer(int kind, int a, int b) {
+    long t;
+    int i;
+    while (true) {
+      t = tail.get();
+      i = (int) (t & mask);
+      long seq = sequences.get(i);
+      if (seq == t) {
+        if (tail.compareAndSet(t, t + 1))
+          break;
+      } else if (seq < t) {
+        return false;
+      }
+    }
+    kinds[i] = kind;
+    as[i] = a;
+    bs[i] = b;
+    sequences.set(i, t + 1);
+    return true;
+  }
+
+  //to hand every event added so far to h, oldest first; returns the number of events.
+  //The ring holds only events older than those in the overflow list, so it goes first.
+  int drain(Handler h) {
+    int n = 0;
+    while (true) {
+      int i = (int) (head & mask);
+      if (sequences.get(i) != head + 1)
+        break;
+      int kind = kinds[i], a = as[i], b = bs[i];
+      sequences.set(i, head + mask + 1);
+      head++;
+      n++;
+      h.handle(kind, a, b);
+    }
+    int[] e;
+    while ((e = overflow.poll()) != null) {
+      n++;
+      h.handle(e[0], e[1], e[2]);
+    }
+    return n;
+  }
+
+  //the number of events that did not fit in the ring and went to the overflow list
+  long spilled() {
+    return spilled.get();
+  }
+}
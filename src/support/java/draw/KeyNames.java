@@ -0,0 +1,193 @@
+package draw;
+
+import java.awt.event.KeyEvent;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+// to map the codes of special keys to their names (e.g. KeyEvent.VK_LEFT to "LEFT");
+// the codes are kept sorted in a small array and looked up by binary search
+public final class KeyNames {
+  private static final int[] codes;
+  private static final String[] names;
+
+  private static Map<Integer, String> table = new HashMap<>();
+
+  private static void add(int code, String name) {
+    table.put(code, name);
+  }
+
+  static {
+    add(KeyEvent.VK_ACCEPT, "ACCEPT");
+    add(KeyEvent.VK_ADD, "ADD");
+    add(KeyEvent.VK_AGAIN, "AGAIN");
+    add(KeyEvent.VK_ALL_CANDIDATES, "ALL_CANDIDATES");
+    add(KeyEvent.VK_ALPHANUMERIC, "ALPHANUMERIC");
+    add(KeyEvent.VK_ALT, "ALT");
+    add(KeyEvent.VK_ALT_GRAPH, "ALT_GRAPH");
+    add(KeyEvent.VK_AMPERSAND, "AMPERSAND");
+    add(KeyEvent.VK_ASTERISK, "ASTERISK");
+    add(KeyEvent.VK_AT, "AT");
+    add(KeyEvent.VK_BACK_QUOTE, "BACK_QUOTE");
+    add(KeyEvent.VK_BACK_SLASH, "BACK_SLASH");
+    add(KeyEvent.VK_BACK_SPACE, "BACK_SPACE");
+    add(KeyEvent.VK_BEGIN, "BEGIN");
+    add(KeyEvent.VK_BRACELEFT, "BRACELEFT");
+    add(KeyEvent.VK_BRACERIGHT, "BRACERIGHT");
+    add(KeyEvent.VK_CANCEL, "CANCEL");
+    add(KeyEvent.VK_CAPS_LOCK, "CAPS_LOCK");
+    add(KeyEvent.VK_CIRCUMFLEX, "CIRCUMFLEX");
+    add(KeyEvent.VK_CLEAR, "CLEAR");
+    add(KeyEvent.VK_CLOSE_BRACKET, "CLOSE_BRACKET");
+    add(KeyEvent.VK_CODE_INPUT, "CODE_INPUT");
+    add(KeyEvent.VK_COLON, "COLON");
+    add(KeyEvent.VK_COMMA, "COMMA");
+    add(KeyEvent.VK_COMPOSE, "COMPOSE");
+    add(KeyEvent.VK_CONTEXT_MENU, "CONTEXT_MENU");
+    add(KeyEvent.VK_CONTROL, "CONTROL");
+    add(KeyEvent.VK_CONVERT, "CONVERT");
+    add(KeyEvent.VK_COPY, "COPY");
+    add(KeyEvent.VK_CUT, "CUT");
+    add(KeyEvent.VK_DEAD_ABOVEDOT, "DEAD_ABOVEDOT");
+    add(KeyEvent.VK_DEAD_ABOVERING, "DEAD_ABOVERING");
+    add(KeyEvent.VK_DEAD_ACUTE, "DEAD_ACUTE");
+    add(KeyEvent.VK_DEAD_BREVE, "DEAD_BREVE");
+    add(KeyEvent.VK_DEAD_CARON, "DEAD_CARON");
+    add(KeyEvent.VK_DEAD_CEDILLA, "DEAD_CEDILLA");
+    add(KeyEvent.VK_DEAD_CIRCUMFLEX, "DEAD_CIRCUMFLEX");
+    add(KeyEvent.VK_DEAD_DIAERESIS, "DEAD_DIAERESIS");
+    add(KeyEvent.VK_DEAD_DOUBLEACUTE, "DEAD_DOUBLEACUTE");
+    add(KeyEvent.VK_DEAD_GRAVE, "DEAD_GRAVE");
+    add(KeyEvent.VK_DEAD_IOTA, "DEAD_IOTA");
+    add(KeyEvent.VK_DEAD_MACRON, "DEAD_MACRON");
+    add(KeyEvent.VK_DEAD_OGONEK, "DEAD_OGONEK");
+    add(KeyEvent.VK_DEAD_SEMIVOICED_SOUND, "DEAD_SEMIVOICED_SOUND");
+    add(KeyEvent.VK_DEAD_TILDE, "DEAD_TILDE");
+    add(KeyEvent.VK_DEAD_VOICED_SOUND, "DEAD_VOICED_SOUND");
+    add(KeyEvent.VK_DECIMAL, "DECIMAL");
+    add(KeyEvent.VK_DELETE, "DELETE");
+    add(KeyEvent.VK_DIVIDE, "DIVIDE");
+    add(KeyEvent.VK_DOLLAR, "DOLLAR");
+    add(KeyEvent.VK_DOWN, "DOWN");
+    add(KeyEvent.VK_END, "END");
+    add(KeyEvent.VK_ENTER, "ENTER");
+    add(KeyEvent.VK_EQUALS, "EQUALS");
+    add(KeyEvent.VK_ESCAPE, "ESCAPE");
+    add(KeyEvent.VK_EURO_SIGN, "EURO_SIGN");
+    add(KeyEvent.VK_EXCLAMATION_MARK, "EXCLAMATION_MARK");
+    add(KeyEvent.VK_F1, "F1");
+    add(KeyEvent.VK_F10, "F10");
+    add(KeyEvent.VK_F11, "F11");
+    add(KeyEvent.VK_F12, "F12");
+    add(KeyEvent.VK_F13, "F13");
+    add(KeyEvent.VK_F14, "F14");
+    add(KeyEvent.VK_F15, "F15");
+    add(KeyEvent.VK_F16, "F16");
+    add(KeyEvent.VK_F17, "F17");
+    add(KeyEvent.VK_F18, "F18");
+    add(KeyEvent.VK_F19, "F19");
+    add(KeyEvent.VK_F2, "F2");
+    add(KeyEvent.VK_F20, "F20");
+    add(KeyEvent.VK_F21, "F21");
+    add(KeyEvent.VK_F22, "F22");
+    add(KeyEvent.VK_F23, "F23");
+    add(KeyEvent.VK_F24, "F24");
+    add(KeyEvent.VK_F3, "F3");
+    add(KeyEvent.VK_F4, "F4");
+    add(KeyEvent.VK_F5, "F5");
+    add(KeyEvent.VK_F6, "F6");
+    add(KeyEvent.VK_F7, "F7");
+    add(KeyEvent.VK_F8, "F8");
+    add(KeyEvent.VK_F9, "F9");
+    add(KeyEvent.VK_FINAL, "FINAL");
+    add(KeyEvent.VK_FIND, "FIND");
+    add(KeyEvent.VK_FULL_WIDTH, "FULL_WIDTH");
+    add(KeyEvent.VK_GREATER, "GREATER");
+    add(KeyEvent.VK_HALF_WIDTH, "HALF_WIDTH");
+    add(KeyEvent.VK_HELP, "HELP");
+    add(KeyEvent.VK_HIRAGANA, "HIRAGANA");
+    add(KeyEvent.VK_HOME, "HOME");
+    add(KeyEvent.VK_INPUT_METHOD_ON_OFF, "INPUT_METHOD_ON_OFF");
+    add(KeyEvent.VK_INSERT, "INSERT");
+    add(KeyEvent.VK_INVERTED_EXCLAMATION_MARK, "INVERTED_EXCLAMATION_MARK");
+    add(KeyEvent.VK_JAPANESE_HIRAGANA, "JAPANESE_HIRAGANA");
+    add(KeyEvent.VK_JAPANESE_KATAKANA, "JAPANESE_KATAKANA");
+    add(KeyEvent.VK_JAPANESE_ROMAN, "JAPANESE_ROMAN");
+    add(KeyEvent.VK_KANA, "KANA");
+    add(KeyEvent.VK_KANA_LOCK, "KANA_LOCK");
+    add(KeyEvent.VK_KANJI, "KANJI");
+    add(KeyEvent.VK_KATAKANA, "KATAKANA");
+    add(KeyEvent.VK_KP_DOWN, "KP_DOWN");
+    add(KeyEvent.VK_KP_LEFT, "KP_LEFT");
+    add(KeyEvent.VK_KP_RIGHT, "KP_RIGHT");
+    add(KeyEvent.VK_KP_UP, "KP_UP");
+    add(KeyEvent.VK_LEFT, "LEFT");
+    add(KeyEvent.VK_LEFT_PARENTHESIS, "LEFT_PARENTHESIS");
+    add(KeyEvent.VK_LESS, "LESS");
+    add(KeyEvent.VK_META, "META");
+    add(KeyEvent.VK_MINUS, "MINUS");
+    add(KeyEvent.VK_MODECHANGE, "MODECHANGE");
+    add(KeyEvent.VK_MULTIPLY, "MULTIPLY");
+    add(KeyEvent.VK_NONCONVERT, "NONCONVERT");
+    add(KeyEvent.VK_NUM_LOCK, "NUM_LOCK");
+    add(KeyEvent.VK_NUMBER_SIGN, "NUMBER_SIGN");
+    add(KeyEvent.VK_NUMPAD0, "NUMPAD0");
+    add(KeyEvent.VK_NUMPAD1, "NUMPAD1");
+    add(KeyEvent.VK_NUMPAD2, "NUMPAD2");
+    add(KeyEvent.VK_NUMPAD3, "NUMPAD3");
+    add(KeyEvent.VK_NUMPAD4, "NUMPAD4");
+    add(KeyEvent.VK_NUMPAD5, "NUMPAD5");
+    add(KeyEvent.VK_NUMPAD6, "NUMPAD6");
+    add(KeyEvent.VK_NUMPAD7, "NUMPAD7");
+    add(KeyEvent.VK_NUMPAD8, "NUMPAD8");
+    add(KeyEvent.VK_NUMPAD9, "NUMPAD9");
+    add(KeyEvent.VK_OPEN_BRACKET, "OPEN_BRACKET");
+    add(KeyEvent.VK_PAGE_DOWN, "PAGE_DOWN");
+    add(KeyEvent.VK_PAGE_UP, "PAGE_UP");
+    add(KeyEvent.VK_PASTE, "PASTE");
+    add(KeyEvent.VK_PAUSE, "PAUSE");
+    add(KeyEvent.VK_PERIOD, "PERIOD");
+    add(KeyEvent.VK_PLUS, "PLUS");
+    add(KeyEvent.VK_PREVIOUS_CANDIDATE, "PREVIOUS_CANDIDATE");
+    add(KeyEvent.VK_PRINTSCREEN, "PRINTSCREEN");
+    add(KeyEvent.VK_PROPS, "PROPS");
+    add(KeyEvent.VK_QUOTE, "QUOTE");
+    add(KeyEvent.VK_QUOTEDBL, "QUOTEDBL");
+    add(KeyEvent.VK_RIGHT, "RIGHT");
+    add(KeyEvent.VK_RIGHT_PARENTHESIS, "RIGHT_PARENTHESIS");
+    add(KeyEvent.VK_ROMAN_CHARACTERS, "ROMAN_CHARACTERS");
+    add(KeyEvent.VK_SCROLL_LOCK, "SCROLL_LOCK");
+    add(KeyEvent.VK_SEMICOLON, "SEMICOLON");
+    add(KeyEvent.VK_SEPARATER, "SEPARATER");
+    add(KeyEvent.VK_SEPARATOR, "SEPARATOR");
+    add(KeyEvent.VK_SHIFT, "SHIFT");
+    add(KeyEvent.VK_SLASH, "SLASH");
+    add(KeyEvent.VK_SPACE, "SPACE");
+    add(KeyEvent.VK_STOP, "STOP");
+    add(KeyEvent.VK_SUBTRACT, "SUBTRACT");
+    add(KeyEvent.VK_TAB, "TAB");
+    add(KeyEvent.VK_UNDEFINED, "UNDEFINED");
+    add(KeyEvent.VK_UNDERSCORE, "UNDERSCORE");
+    add(KeyEvent.VK_UNDO, "UNDO");
+    add(KeyEvent.VK_UP, "UP");
+    add(KeyEvent.VK_WINDOWS, "WINDOWS");
+    codes = new int[table.size()];
+    int i = 0;
+    for (int code : table.keySet())
+      codes[i++] = code;
+    Arrays.sort(codes);
+    names = new String[codes.length];
+    for (i = 0; i < codes.length; i++)
+      names[i] = table.get(codes[i]);
+    table = null;
+  }
+
+  private KeyNames() {
+  }
+
+  //to obtain the name of the key of the given code, or null if it has no name
+  public static String name(int keyCode) {
+    int i = Arrays.binarySearch(codes, keyCode);
+    return i >= 0 ? names[i] : null;
+  }
+}
@@ -2,17 +2,16 @@ package draw;
 
 import geometry.Posn;
 
-import java.awt.event.ActionEvent;
-import java.awt.event.ActionListener;
+import java.awt.GraphicsEnvironment;
 import java.awt.event.KeyEvent;
 import java.awt.event.KeyListener;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
 import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
-import java.util.concurrent.SynchronousQueue;
-
-import javax.swing.Timer;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.locks.LockSupport;
 
 /**
  * to represent worlds of games
@@ -25,7 +24,8 @@ public abstract class World implements KeyListener {
 
   /**
    * to start evolving the world from this state, calling onTick method in every
-   * s seconds
+   * s seconds. Run with -Ddraw.pageFlipping=true to present the frames through
+   * page flipping (see Canvas.setPageFlippingMode).
    * 
    * @param width
    *          --- size of the canvas
@@ -48,6 +48,8 @@ public abstract class World implements KeyListener {
     this.worldWidth = width;
     this.worldHeight = height;
     theCanvas = new Canvas(width, height, this.getClass().getSimpleName());
+    if (Boolean.getBoolean("draw.pageFlipping"))
+      theCanvas.setPageFlippingMode();
     theCanvas.addKeyListener(this);
     theCanvas.show();
     theCanvas.dialog(driverLoop(s, World.this).endingMessage());
@@ -97,6 +99,20 @@ public abstract class World implements KeyListener {
    */
   public abstract World onKeyEvent(String key);
 
+  /**
+   * to create the state of this world after pressed a key, given by its code
+   * (KeyEvent.VK_LEFT etc.). Worlds that switch on key codes can override it
+   * to avoid building and comparing key names; by default it returns null,
+   * and then onKeyEvent is called with the name of the key.
+   * 
+   * @param keyCode
+   *          --- the code of the pressed key
+   * @return the world with new state, or null to fall back to onKeyEvent
+   */
+  public World onKeyCode(int keyCode) {
+    return null;
+  }
+
   /**
    * to create the state of this world after clicked the given location on the
    * canvas
@@ -115,29 +131,53 @@ public abstract class World implements KeyListener {
    */
   public abstract boolean draw();
 
+  /**
+   * to draw the current state of this world onto theCanvas field, alpha
+   * (0 &lt;= alpha &lt; 1) of the way to the next tick. Worlds that move
+   * smoothly between ticks can override it; by default it is the same as draw().
+   * 
+   * @param alpha
+   *          --- the fraction of the tick interval elapsed since the last tick
+   * @return true if successfully drawn
+   */
+  public boolean draw(double alpha) {
+    return draw();
+  }
+
   // ------------------------------------------
 
-  private World world;
+  private World world; // read and replaced by the loop thread only
+  private volatile boolean running;
+  private volatile boolean terminated;
+  // what stopped the loop thread, to be thrown again from bigBang
+  private volatile Throwable failure;
+  // key presses and clicks, from the AWT event thread to the loop thread
+  private final InputQueue inputs = new InputQueue(1024);
+  private final InputQueue.Handler inputHandler = new InputQueue.Handler() {
+    @Override
+    public void handle(int kind, int a, int b) {
+      if (kind == InputQueue.KEY) {
+        World next = World.this.world.onKeyCode(a);
+        World.this.world = next != null ? next : World.this.world.onKeyEvent(keyEventName(a, (char) b));
+      } else if (kind == InputQueue.CLICK) {
+        World.this.world = World.this.world.onClick(new Posn(a, b));
+      }
+    }
+  };
+
+  // the most ticks run back to back when the loop falls behind; beyond that
+  // the backlog is dropped rather than making the game race to catch up
+  private static final int MAX_CATCH_UP = 5;
 
   private World driverLoop(final double s, World w) {
     this.world = w;
-    final SynchronousQueue<World> q = new SynchronousQueue<>();
-    Timer timer = new Timer((int) (1000 * s), new ActionListener() {
-
-      @Override
-      public void actionPerformed(ActionEvent e) {
-        World.this.updateWorld();
-        if (!World.this.world.inProgess()) {
-          q.add(World.this);
-        }
-      }
-    });
+    final BlockingQueue<World> q = new LinkedBlockingQueue<>();
+    final long step = Math.max(1L, Math.round(s * 1e9));
     theCanvas.addWindowListener(new WindowAdapter() {
       @Override
       public void windowClosing(WindowEvent e) {
-        World.this.world = new StableWorld(
-            "The world has been terminated by the external force.");
-        q.add(World.this.world);
+        World.this.terminated = true;
+        q.offer(World.this);
       }
     });
     theCanvas.addMouseListener(new MouseAdapter() {
@@ -147,35 +187,113 @@ public abstract class World implements KeyListener {
         World.this.mouseClicked(e);
       }
     });
-    timer.start();
+    this.running = true;
+    Thread loop = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          World.this.runLoop(step, q);
+        } catch (Throwable t) {
+          World.this.failure = t;
+        } finally {
+          World.this.running = false;
+          q.offer(World.this);
+        }
+      }
+    }, "World loop");
+    loop.setDaemon(true);
+    loop.start();
 
     try {
       q.take();
     } catch (InterruptedException e1) {
       e1.printStackTrace();
     }
-    timer.stop();
+    this.running = false;
+    try {
+      loop.join();
+    } catch (InterruptedException e1) {
+      e1.printStackTrace();
+    }
+    Throwable t = this.failure;
+    if (t instanceof RuntimeException)
+      throw (RuntimeException) t;
+    if (t instanceof Error)
+      throw (Error) t;
+    if (t != null)
+      throw new RuntimeException(t);
+    if (this.terminated)
+      this.world = new StableWorld("The world has been terminated by the external force.");
     return this.world;
   }
 
-  private void updateWorld() {
-    this.world = this.world.onTick();
+  // to run onTick every step nanoseconds of System.nanoTime and draw the world
+  // once per display frame in between, until the world stops. The inputs
+  // queued since the last frame are applied before the ticks of the frame.
+  private void runLoop(long step, BlockingQueue<World> q) {
+    long frame = displayFrameNanos();
+    long nextTick = System.nanoTime() + step;
+    while (this.running) {
+      inputs.drain(inputHandler);
+      long now = System.nanoTime();
+      int ticks = 0;
+      while (now - nextTick >= 0 && ticks < MAX_CATCH_UP) {
+        this.world = this.world.onTick();
+        nextTick += step;
+        ticks++;
+        if (!this.world.inProgess()) {
+          drawWorld(0);
+          q.offer(this);
+          return;
+        }
+        inputs.drain(inputHandler);
+      }
+      if (now - nextTick >= 0)
+        nextTick = now + step;
+      drawWorld(1.0 - (double) (nextTick - now) / step);
+      long wake = Math.min(nextTick, System.nanoTime() + frame);
+      long wait = wake - System.nanoTime();
+      if (wait > 0)
+        LockSupport.parkNanos(wait);
+    }
+  }
+
+  // the interval between frames of the display, or 1/60 seconds if unknown
+  private static long displayFrameNanos() {
+    int hz = 0;
+    try {
+      if (!GraphicsEnvironment.isHeadless())
+        hz = GraphicsEnvironment.getLocalGraphicsEnvironment().getDefaultScreenDevice()
+            .getDisplayMode().getRefreshRate();
+    } catch (RuntimeException e) {
+      hz = 0;
+    }
+    return 1000000000L / (hz > 0 ? hz : 60);
+  }
+
+  // to draw the current world as one frame, so that it is shown with one repaint
+  private void drawWorld(double alpha) {
     this.world.theCanvas = this.theCanvas;
-    this.world.draw();
+    this.theCanvas.beginFrame();
+    try {
+      this.world.draw(alpha);
+    } finally {
+      this.theCanvas.endFrame();
+    }
   }
 
   boolean inProgess() {
     return true;
   }
 
+  // the AWT listeners only queue the events; the loop applies them to the world
   private void mouseClicked(MouseEvent e) {
     int x = e.getX(), y = e.getY();
     int w = theCanvas.getWidth(), h = theCanvas.getHeight();
     int worldX = this.worldWidth*x / w, worldY = this.worldHeight*y / h;
     
-    this.world = this.world.onClick(new Posn(worldX, worldY));
-    this.world.theCanvas = this.theCanvas;
-    this.world.draw();
+    if (this.running)
+      inputs.add(InputQueue.CLICK, worldX, worldY);
   }
   @Override
   public void keyTyped(KeyEvent e) {
@@ -184,179 +302,21 @@ public abstract class World implements KeyListener {
 
   @Override
   public void keyPressed(KeyEvent e) {
-    this.world = this.world.onKeyEvent(keyEventName(e));
-    this.world.theCanvas = this.theCanvas;
-    this.world.draw();
+    // once the loop has stopped nobody drains the queue, so the event is ignored
+    if (this.running)
+      inputs.add(InputQueue.KEY, e.getKeyCode(), e.getKeyChar());
   }
 
   @Override
   public void keyReleased(KeyEvent e) {
   }
 
-  private static String keyEventName(KeyEvent e) {
-    String name = keyCodeName(e.getKeyCode());
-    return name != null ? name : "" + e.getKeyChar();
+  private static String keyEventName(int keyCode, char keyChar) {
+    String name = keyCodeName(keyCode);
+    return name != null ? name : "" + keyChar;
   }
 
   private static String keyCodeName(int keycode) {
-    return 0 <= keycode && keycode < keyNames.length ? keyNames[keycode] : null;
-  }
-
-  static String[] keyNames = new String[Character.MAX_VALUE];
-  static {
-    keyNames[KeyEvent.VK_ACCEPT] = "ACCEPT";
-    keyNames[KeyEvent.VK_ADD] = "ADD";
-    keyNames[KeyEvent.VK_AGAIN] = "AGAIN";
-    keyNames[KeyEvent.VK_ALL_CANDIDATES] = "ALL_CANDIDATES";
-    keyNames[KeyEvent.VK_ALPHANUMERIC] = "ALPHANUMERIC";
-    keyNames[KeyEvent.VK_ALT] = "ALT";
-    keyNames[KeyEvent.VK_ALT_GRAPH] = "ALT_GRAPH";
-    keyNames[KeyEvent.VK_AMPERSAND] = "AMPERSAND";
-    keyNames[KeyEvent.VK_ASTERISK] = "ASTERISK";
-    keyNames[KeyEvent.VK_AT] = "AT";
-    keyNames[KeyEvent.VK_BACK_QUOTE] = "BACK_QUOTE";
-    keyNames[KeyEvent.VK_BACK_SLASH] = "BACK_SLASH";
-    keyNames[KeyEvent.VK_BACK_SPACE] = "BACK_SPACE";
-    keyNames[KeyEvent.VK_BEGIN] = "BEGIN";
-    keyNames[KeyEvent.VK_BRACELEFT] = "BRACELEFT";
-    keyNames[KeyEvent.VK_BRACERIGHT] = "BRACERIGHT";
-    keyNames[KeyEvent.VK_CANCEL] = "CANCEL";
-    keyNames[KeyEvent.VK_CAPS_LOCK] = "CAPS_LOCK";
-    keyNames[KeyEvent.VK_CIRCUMFLEX] = "CIRCUMFLEX";
-    keyNames[KeyEvent.VK_CLEAR] = "CLEAR";
-    keyNames[KeyEvent.VK_CLOSE_BRACKET] = "CLOSE_BRACKET";
-    keyNames[KeyEvent.VK_CODE_INPUT] = "CODE_INPUT";
-    keyNames[KeyEvent.VK_COLON] = "COLON";
-    keyNames[KeyEvent.VK_COMMA] = "COMMA";
-    keyNames[KeyEvent.VK_COMPOSE] = "COMPOSE";
-    keyNames[KeyEvent.VK_CONTEXT_MENU] = "CONTEXT_MENU";
-    keyNames[KeyEvent.VK_CONTROL] = "CONTROL";
-    keyNames[KeyEvent.VK_CONVERT] = "CONVERT";
-    keyNames[KeyEvent.VK_COPY] = "COPY";
-    keyNames[KeyEvent.VK_CUT] = "CUT";
-    keyNames[KeyEvent.VK_DEAD_ABOVEDOT] = "DEAD_ABOVEDOT";
-    keyNames[KeyEvent.VK_DEAD_ABOVERING] = "DEAD_ABOVERING";
-    keyNames[KeyEvent.VK_DEAD_ACUTE] = "DEAD_ACUTE";
-    keyNames[KeyEvent.VK_DEAD_BREVE] = "DEAD_BREVE";
-    keyNames[KeyEvent.VK_DEAD_CARON] = "DEAD_CARON";
-    keyNames[KeyEvent.VK_DEAD_CEDILLA] = "DEAD_CEDILLA";
-    keyNames[KeyEvent.VK_DEAD_CIRCUMFLEX] = "DEAD_CIRCUMFLEX";
-    keyNames[KeyEvent.VK_DEAD_DIAERESIS] = "DEAD_DIAERESIS";
-    keyNames[KeyEvent.VK_DEAD_DOUBLEACUTE] = "DEAD_DOUBLEACUTE";
-    keyNames[KeyEvent.VK_DEAD_GRAVE] = "DEAD_GRAVE";
-    keyNames[KeyEvent.VK_DEAD_IOTA] = "DEAD_IOTA";
-    keyNames[KeyEvent.VK_DEAD_MACRON] = "DEAD_MACRON";
-    keyNames[KeyEvent.VK_DEAD_OGONEK] = "DEAD_OGONEK";
-    keyNames[KeyEvent.VK_DEAD_SEMIVOICED_SOUND] = "DEAD_SEMIVOICED_SOUND";
-    keyNames[KeyEvent.VK_DEAD_TILDE] = "DEAD_TILDE";
-    keyNames[KeyEvent.VK_DEAD_VOICED_SOUND] = "DEAD_VOICED_SOUND";
-    keyNames[KeyEvent.VK_DECIMAL] = "DECIMAL";
-    keyNames[KeyEvent.VK_DELETE] = "DELETE";
-    keyNames[KeyEvent.VK_DIVIDE] = "DIVIDE";
-    keyNames[KeyEvent.VK_DOLLAR] = "DOLLAR";
-    keyNames[KeyEvent.VK_DOWN] = "DOWN";
-    keyNames[KeyEvent.VK_END] = "END";
-    keyNames[KeyEvent.VK_ENTER] = "ENTER";
-    keyNames[KeyEvent.VK_EQUALS] = "EQUALS";
-    keyNames[KeyEvent.VK_ESCAPE] = "ESCAPE";
-    keyNames[KeyEvent.VK_EURO_SIGN] = "EURO_SIGN";
-    keyNames[KeyEvent.VK_EXCLAMATION_MARK] = "EXCLAMATION_MARK";
-    keyNames[KeyEvent.VK_F1] = "F1";
-    keyNames[KeyEvent.VK_F10] = "F10";
-    keyNames[KeyEvent.VK_F11] = "F11";
-    keyNames[KeyEvent.VK_F12] = "F12";
-    keyNames[KeyEvent.VK_F13] = "F13";
-    keyNames[KeyEvent.VK_F14] = "F14";
-    keyNames[KeyEvent.VK_F15] = "F15";
-    keyNames[KeyEvent.VK_F16] = "F16";
-    keyNames[KeyEvent.VK_F17] = "F17";
-    keyNames[KeyEvent.VK_F18] = "F18";
-    keyNames[KeyEvent.VK_F19] = "F19";
-    keyNames[KeyEvent.VK_F2] = "F2";
-    keyNames[KeyEvent.VK_F20] = "F20";
-    keyNames[KeyEvent.VK_F21] = "F21";
-    keyNames[KeyEvent.VK_F22] = "F22";
-    keyNames[KeyEvent.VK_F23] = "F23";
-    keyNames[KeyEvent.VK_F24] = "F24";
-    keyNames[KeyEvent.VK_F3] = "F3";
-    keyNames[KeyEvent.VK_F4] = "F4";
-    keyNames[KeyEvent.VK_F5] = "F5";
-    keyNames[KeyEvent.VK_F6] = "F6";
-    keyNames[KeyEvent.VK_F7] = "F7";
-    keyNames[KeyEvent.VK_F8] = "F8";
-    keyNames[KeyEvent.VK_F9] = "F9";
-    keyNames[KeyEvent.VK_FINAL] = "FINAL";
-    keyNames[KeyEvent.VK_FIND] = "FIND";
-    keyNames[KeyEvent.VK_FULL_WIDTH] = "FULL_WIDTH";
-    keyNames[KeyEvent.VK_GREATER] = "GREATER";
-    keyNames[KeyEvent.VK_HALF_WIDTH] = "HALF_WIDTH";
-    keyNames[KeyEvent.VK_HELP] = "HELP";
-    keyNames[KeyEvent.VK_HIRAGANA] = "HIRAGANA";
-    keyNames[KeyEvent.VK_HOME] = "HOME";
-    keyNames[KeyEvent.VK_INPUT_METHOD_ON_OFF] = "INPUT_METHOD_ON_OFF";
-    keyNames[KeyEvent.VK_INSERT] = "INSERT";
-    keyNames[KeyEvent.VK_INVERTED_EXCLAMATION_MARK] = "INVERTED_EXCLAMATION_MARK";
-    keyNames[KeyEvent.VK_JAPANESE_HIRAGANA] = "JAPANESE_HIRAGANA";
-    keyNames[KeyEvent.VK_JAPANESE_KATAKANA] = "JAPANESE_KATAKANA";
-    keyNames[KeyEvent.VK_JAPANESE_ROMAN] = "JAPANESE_ROMAN";
-    keyNames[KeyEvent.VK_KANA] = "KANA";
-    keyNames[KeyEvent.VK_KANA_LOCK] = "KANA_LOCK";
-    keyNames[KeyEvent.VK_KANJI] = "KANJI";
-    keyNames[KeyEvent.VK_KATAKANA] = "KATAKANA";
-    keyNames[KeyEvent.VK_KP_DOWN] = "KP_DOWN";
-    keyNames[KeyEvent.VK_KP_LEFT] = "KP_LEFT";
-    keyNames[KeyEvent.VK_KP_RIGHT] = "KP_RIGHT";
-    keyNames[KeyEvent.VK_KP_UP] = "KP_UP";
-    keyNames[KeyEvent.VK_LEFT] = "LEFT";
-    keyNames[KeyEvent.VK_LEFT_PARENTHESIS] = "LEFT_PARENTHESIS";
-    keyNames[KeyEvent.VK_LESS] = "LESS";
-    keyNames[KeyEvent.VK_META] = "META";
-    keyNames[KeyEvent.VK_MINUS] = "MINUS";
-    keyNames[KeyEvent.VK_MODECHANGE] = "MODECHANGE";
-    keyNames[KeyEvent.VK_MULTIPLY] = "MULTIPLY";
-    keyNames[KeyEvent.VK_NONCONVERT] = "NONCONVERT";
-    keyNames[KeyEvent.VK_NUM_LOCK] = "NUM_LOCK";
-    keyNames[KeyEvent.VK_NUMBER_SIGN] = "NUMBER_SIGN";
-    keyNames[KeyEvent.VK_NUMPAD0] = "NUMPAD0";
-    keyNames[KeyEvent.VK_NUMPAD1] = "NUMPAD1";
-    keyNames[KeyEvent.VK_NUMPAD2] = "NUMPAD2";
-    keyNames[KeyEvent.VK_NUMPAD3] = "NUMPAD3";
-    keyNames[KeyEvent.VK_NUMPAD4] = "NUMPAD4";
-    keyNames[KeyEvent.VK_NUMPAD5] = "NUMPAD5";
-    keyNames[KeyEvent.VK_NUMPAD6] = "NUMPAD6";
-    keyNames[KeyEvent.VK_NUMPAD7] = "NUMPAD7";
-    keyNames[KeyEvent.VK_NUMPAD8] = "NUMPAD8";
-    keyNames[KeyEvent.VK_NUMPAD9] = "NUMPAD9";
-    keyNames[KeyEvent.VK_OPEN_BRACKET] = "OPEN_BRACKET";
-    keyNames[KeyEvent.VK_PAGE_DOWN] = "PAGE_DOWN";
-    keyNames[KeyEvent.VK_PAGE_UP] = "PAGE_UP";
-    keyNames[KeyEvent.VK_PASTE] = "PASTE";
-    keyNames[KeyEvent.VK_PAUSE] = "PAUSE";
-    keyNames[KeyEvent.VK_PERIOD] = "PERIOD";
-    keyNames[KeyEvent.VK_PLUS] = "PLUS";
-    keyNames[KeyEvent.VK_PREVIOUS_CANDIDATE] = "PREVIOUS_CANDIDATE";
-    keyNames[KeyEvent.VK_PRINTSCREEN] = "PRINTSCREEN";
-    keyNames[KeyEvent.VK_PROPS] = "PROPS";
-    keyNames[KeyEvent.VK_QUOTE] = "QUOTE";
-    keyNames[KeyEvent.VK_QUOTEDBL] = "QUOTEDBL";
-    keyNames[KeyEvent.VK_RIGHT] = "RIGHT";
-    keyNames[KeyEvent.VK_RIGHT_PARENTHESIS] = "RIGHT_PARENTHESIS";
-    keyNames[KeyEvent.VK_ROMAN_CHARACTERS] = "ROMAN_CHARACTERS";
-    keyNames[KeyEvent.VK_SCROLL_LOCK] = "SCROLL_LOCK";
-    keyNames[KeyEvent.VK_SEMICOLON] = "SEMICOLON";
-    keyNames[KeyEvent.VK_SEPARATER] = "SEPARATER";
-    keyNames[KeyEvent.VK_SEPARATOR] = "SEPARATOR";
-    keyNames[KeyEvent.VK_SHIFT] = "SHIFT";
-    keyNames[KeyEvent.VK_SLASH] = "SLASH";
-    keyNames[KeyEvent.VK_SPACE] = "SPACE";
-    keyNames[KeyEvent.VK_STOP] = "STOP";
-    keyNames[KeyEvent.VK_SUBTRACT] = "SUBTRACT";
-    keyNames[KeyEvent.VK_TAB] = "TAB";
-    keyNames[KeyEvent.VK_UNDEFINED] = "UNDEFINED";
-    keyNames[KeyEvent.VK_UNDERSCORE] = "UNDERSCORE";
-    keyNames[KeyEvent.VK_UNDO] = "UNDO";
-    keyNames[KeyEvent.VK_UP] = "UP";
-    keyNames[KeyEvent.VK_WINDOWS] = "WINDOWS";
-
+    return KeyNames.name(keycode);
   }
 }
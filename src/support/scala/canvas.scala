@@ -1,43 +1,65 @@
 package sdraw
 
 import colors.IColor
-import geometry.{Posn => JavaPos}
-import draw.{Canvas => JavaCanvas}
+import draw.{Canvas => JavaCanvas, CellRenderer}
 
 import sgeometry.Pos
 
+// Pos を受け取るメソッドは、整数を受け取るメソッドに Pos を分解して渡す（geometry.Posn は作らない）
 case class Canvas(_canvas: JavaCanvas) {
   def width: Int = _canvas.getWidth()
   def height: Int = _canvas.getHeight()
 
   def drawCircle(c: Pos, radius: Int, color: IColor): Boolean =
-    _canvas.drawCircle(new JavaPos(c.x, c.y), radius, color)
+    _canvas.drawCircle(c.x, c.y, radius, color)
+
+  def drawCircle(x: Int, y: Int, radius: Int, color: IColor): Boolean =
+    _canvas.drawCircle(x, y, radius, color)
 
   def drawDisk(c: Pos, radius: Int, color: IColor): Boolean =
-    _canvas.drawDisk(new JavaPos(c.x, c.y), radius, color)
+    _canvas.drawDisk(c.x, c.y, radius, color)
+
+  def drawDisk(x: Int, y: Int, radius: Int, color: IColor): Boolean =
+    _canvas.drawDisk(x, y, radius, color)
 
   def drawOval(c: Pos, radiusx: Int, radiusy: Int, color: IColor): Boolean =
-    _canvas.drawOval(new JavaPos(c.x, c.y), radiusx, radiusy, color)
+    _canvas.drawOval(c.x, c.y, radiusx, radiusy, color)
+
+  def drawOval(x: Int, y: Int, radiusx: Int, radiusy: Int, color: IColor): Boolean =
+    _canvas.drawOval(x, y, radiusx, radiusy, color)
 
   def drawOvals(cs: List[Pos], radiusx: Int, radiusy: Int, color: IColor): Boolean = {
     cs match {
       case Nil     => true
       case c :: cs =>
-        _canvas.drawOval(new JavaPos(c.x, c.y), radiusx, radiusy, color)
+        _canvas.drawOval(c.x, c.y, radiusx, radiusy, color)
         drawOvals(cs, radiusx, radiusy, color)
     }
   }
 
-  def drawFrame(c: Pos, width: Int, height: Int, color: IColor): Boolean = {
-    _canvas.drawLine(new JavaPos(c.x, c.y), new JavaPos(c.x+width, c.y), color)
-    _canvas.drawLine(new JavaPos(c.x+width, c.y), new JavaPos(c.x+width, c.y+height), color)
-    _canvas.drawLine(new JavaPos(c.x+width, c.y+height), new JavaPos(c.x, c.y+height), color)
-    _canvas.drawLine(new JavaPos(c.x, c.y+height), new JavaPos(c.x, c.y), color)
+  def drawFrame(c: Pos, width: Int, height: Int, color: IColor): Boolean =
+    drawFrame(c.x, c.y, width, height, color)
+
+  def drawFrame(x: Int, y: Int, width: Int, height: Int, color: IColor): Boolean = {
+    _canvas.drawLine(x, y, x+width, y, color)
+    _canvas.drawLine(x+width, y, x+width, y+height, color)
+    _canvas.drawLine(x+width, y+height, x, y+height, color)
+    _canvas.drawLine(x, y+height, x, y, color)
   }
 
   def drawRect(c: Pos, width: Int, height: Int, color: IColor): Boolean =
-    _canvas.drawRect(new JavaPos(c.x, c.y), width, height, color)
+    _canvas.drawRect(c.x, c.y, width, height, color)
+
+  def drawRect(x: Int, y: Int, width: Int, height: Int, color: IColor): Boolean =
+    _canvas.drawRect(x, y, width, height, color)
 
   def drawString(c: Pos, msg: String): Boolean =
-  _canvas.drawString(new JavaPos(c.x, c.y), msg)
+  _canvas.drawString(c.x, c.y, msg)
+
+  def drawString(x: Int, y: Int, msg: String): Boolean =
+    _canvas.drawString(x, y, msg)
+
+  // cols x rows 個のマス目を、前のフレームから色が変わったところだけ描き直す
+  def cells(cols: Int, rows: Int, size: Int): CellRenderer =
+    _canvas.getCellRenderer(cols, rows, size)
 }
@@ -14,9 +14,12 @@ case object Red       extends colors.Red       with Color
 case object White     extends colors.White     with Color
 case object Yellow    extends colors.Yellow    with Color
 case object NoColor   extends colors.White     with Color
+// java.awt.Color は colors.ColorCache で共有し、描画のたびに作らない
 object Transparent extends Color {
-  def getColor(): java.awt.Color = new java.awt.Color(1, 1, 1, 1)
+  private val color = colors.ColorCache.rgba(1, 1, 1, 1)
+  def getColor(): java.awt.Color = color
 }
 case class HSB(h: Float, s: Float, b: Float) extends Color {
-  def getColor(): java.awt.Color = java.awt.Color.getHSBColor(h, s, b)
+  @transient private lazy val color = colors.ColorCache.hsb(h, s, b)
+  def getColor(): java.awt.Color = color
 }
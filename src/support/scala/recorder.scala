@@ -0,0 +1,138 @@
+package sdraw
+
+import java.io.{BufferedOutputStream, DataInputStream, DataOutputStream, EOFException, InputStream, OutputStream}
+import java.nio.charset.StandardCharsets.UTF_8
+
+// ゲームの記録：乱数の種と、tick・キー入力・クリックの列をバイナリで書き出す
+//   形式：
+//     "SDRW"、版（1 バイト）、種、パラメータの数、パラメータ
+//     イベントの列：(前のイベントからの tick 数 << 2 | 種類)、続けて種類ごとの中身
+//   整数はすべて可変長（7 ビットずつ）、符号つきのものはジグザグ符号化する。
+//   tick は個別には書かず、次のイベントまでの数としてまとめる。
+final class Recorder(out: OutputStream, seed: Long, params: Int*) {
+  import Recording._
+
+  private val data = new DataOutputStream(new BufferedOutputStream(out))
+  private var pending = 0L // 前のイベントからの tick の数
+  private var closed = false
+
+  data.write(Magic)
+  data.writeByte(Version)
+  writeVarLong(data, zigzag(seed))
+  writeVarLong(data, params.length)
+  params.foreach(p => writeVarLong(data, zigzag(p)))
+
+  def tick(): Unit = pending += 1
+
+  def key(name: String): Unit = {
+    val bytes = name.getBytes(UTF_8)
+    event(KeyNameTag)
+    writeVarLong(data, bytes.length)
+    data.write(bytes)
+  }
+
+  def keyCode(code: Int): Unit = {
+    event(KeyCodeTag)
+    writeVarLong(data, zigzag(code))
+  }
+
+  def click(x: Int, y: Int): Unit = {
+    event(ClickTag)
+    writeVarLong(data, zigzag(x))
+    writeVarLong(data, zigzag(y))
+  }
+
+  // 残りの tick の数を書いて閉じる
+  def close(): Unit = if (!closed) {
+    closed = true
+    event(EndTag)
+    data.close()
+  }
+
+  private def event(tag: Int): Unit = {
+    writeVarLong(data, (pending << 2) | tag)
+    pending = 0
+  }
+}
+
+// 読み込んだ記録。イベントの tick はゲーム開始からの tick の数（その数だけ tick した後に起きた）。
+final case class Recording(seed: Long, params: Vector[Int], events: Vector[Recording.Event], ticks: Long)
+
+object Recording {
+  sealed trait Event { def tick: Long }
+  final case class KeyName(tick: Long, key: String) extends Event
+  final case class KeyCode(tick: Long, code: Int) extends Event
+  final case class Click(tick: Long, x: Int, y: Int) extends Event
+
+  private[sdraw] val Magic = "SDRW".getBytes(UTF_8)
+  // 版 2：テトロミノを 7-bag で選ぶようになった（版 1 の記録を再生すると別のゲームになる）
+  private[sdraw] val Version = 2
+
+  private[sdraw] val KeyNameTag = 0
+  private[sdraw] val KeyCodeTag = 1
+  private[sdraw] val ClickTag = 2
+  private[sdraw] val EndTag = 3
+
+  def zigzag(n: Long): Long = (n << 1) ^ (n >> 63)
+  def unzigzag(n: Long): Long = (n >>> 1) ^ -(n & 1)
+
+  def writeVarLong(out: DataOutputStream, n0: Long): Unit = {
+    var n = n0
+    while ((n & ~0x7fL) != 0) {
+      out.writeByte(((n & 0x7f) | 0x80).toInt)
+      n >>>= 7
+    }
+    out.writeByte(n.toInt)
+  }
+
+  def readVarLong(in: DataInputStream): Long = {
+    var n = 0L
+    var shift = 0
+    var b = in.readUnsignedByte()
+    while ((b & 0x80) != 0) {
+      n |= (b & 0x7fL) << shift
+      shift += 7
+      b = in.readUnsignedByte()
+    }
+    n | (b.toLong << shift)
+  }
+
+  // 途中で切れている記録（ゲーム中に異常終了したもの）は、読めたところまでを返す
+  def read(input: InputStream): Recording = {
+    val in = new DataInputStream(input)
+    val magic = new Array[Byte](Magic.length)
+    in.readFully(magic)
+    if (!java.util.Arrays.equals(magic, Magic))
+      throw new IllegalArgumentException("Recording: not a recording")
+    val version = in.readUnsignedByte()
+    if (version != Version)
+      throw new IllegalArgumentException("Recording: unsupported version " + version)
+    val seed = unzigzag(readVarLong(in))
+    val params = Vector.fill(readVarLong(in).toInt)(unzigzag(readVarLong(in)).toInt)
+    val events = Vector.newBuilder[Event]
+    var tick = 0L
+    var done = false
+    while (!done) {
+      try {
+        val head = readVarLong(in)
+        tick += head >>> 2
+        (head & 3).toInt match {
+          case KeyNameTag =>
+            val bytes = new Array[Byte](readVarLong(in).toInt)
+            in.readFully(bytes)
+            events += KeyName(tick, new String(bytes, UTF_8))
+          case KeyCodeTag =>
+            events += KeyCode(tick, unzigzag(readVarLong(in)).toInt)
+          case ClickTag =>
+            val x = unzigzag(readVarLong(in)).toInt
+            events += Click(tick, x, unzigzag(readVarLong(in)).toInt)
+          case _ =>
+            done = true
+        }
+      } catch {
+        case _: EOFException => done = true
+      }
+    }
+    Recording(seed, params, events.result(), tick)
+  }
+}
@@ -4,22 +4,46 @@ import draw.{World => _World}
 
 abstract class World() { world =>
   object _world extends _World {
-    override def onClick(p: geometry.Posn): _World =
-      world.click(sgeometry.Pos(p.x, p.y))._world
-    def onTick(): _World =
-      world.tick()._world
-    def onKeyEvent(key: String): _World =
-      world.keyEvent(key)._world
+    override def onClick(p: geometry.Posn): _World = {
+      world.recorder.foreach(_.click(p.x, p.y))
+      pass(world.click(sgeometry.Pos(p.x, p.y)))
+    }
+    def onTick(): _World = {
+      world.recorder.foreach(_.tick())
+      pass(world.tick())
+    }
+    def onKeyEvent(key: String): _World = {
+      world.recorder.foreach(_.key(key))
+      pass(world.keyEvent(key))
+    }
+    override def onKeyCode(code: Int): _World =
+      world.keyCode(code) match {
+        case Some(w) =>
+          world.recorder.foreach(_.keyCode(code))
+          pass(w)
+        case None => null
+      }
     def draw(): Boolean = world.draw()
   }
 
+  // 次の world に記録係を引き継ぐ
+  private def pass(next: World): _World = {
+    next.recorder = recorder
+    next._world
+  }
+
   var theCanvas: Option[Canvas] = None
   def canvas: Canvas = {
     if (theCanvas.isEmpty) theCanvas = Some(Canvas(_world.theCanvas))
     theCanvas.get
   }
 
-  def bigBang(width: Int, height: Int, t: Double): Boolean = _world.bigBang(width, height, t)
+  // ゲームを記録するときに設定する（bigBang の前に）。記録は bigBang が終わると閉じる。
+  var recorder: Option[Recorder] = None
+
+  def bigBang(width: Int, height: Int, t: Double): Boolean =
+    try _world.bigBang(width, height, t)
+    finally recorder.foreach(_.close())
   def endOfWorld(s: String) { _world.endOfWorld(s) }
 
   def draw(): Boolean
@@ -27,4 +51,8 @@ abstract class World() { world =>
   def click(p: sgeometry.Pos): World
   def tick(): World
   def keyEvent(key: String): World
+
+  // キーコード（java.awt.event.KeyEvent.VK_LEFT など）で受け取るときに上書きする。
+  // None を返すと、キーの名前で keyEvent が呼ばれる。
+  def keyCode(code: Int): Option[World] = None
 }
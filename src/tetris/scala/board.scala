@@ -0,0 +1,369 @@
+package tetris
+
+import scala.collection.immutable.BitSet
+
+import sdraw._
+
+import tetris.{ShapeLib => S}
+
+// 詰め込み表現（ビットボード）のテトロミノ・井戸
+//   行ごとに Board.Row（占有ビット列と色の番号）を持ち、行の列は Vector で持つ。
+//   Row は作ったあと変更しないので、更新しても変わらない行は前の Board と共有される。
+//   piece を積むときに作り直すのは piece のかかる 1〜4 行だけで、揃った行を消すときも
+//   消す行の前後をつなぎ直すだけで済む。
+//   揃った行の番号は fullRows に持ち、piece を積むたびにかかった行だけを調べて更新する。
+//   列ごとのいちばん上のブロックの行 tops も持ち、落下距離と衝突判定の近道に使う。
+//   zobrist はブロックのあるマスの Zobrist ハッシュ（色は含まない）で、作り直した行の分だけ更新する。
+final class Board private (val width: Int, private val rows: Vector[Board.Row],
+                           val fullRows: BitSet, private val tops: Array[Int], val zobrist: Long) {
+  import Board.Row
+
+  val height: Int = rows.length
+
+  // 積まれたブロックのいちばん上の行（空なら height）。これより上の行はすべて空。
+  val surface: Int = {
+    var s = height
+    var j = 0
+    while (j < width) {
+      if (tops(j) < s) s = tops(j)
+      j += 1
+    }
+    s
+  }
+
+  // j 列目のいちばん上のブロックの行（空なら height）。その 1 つ上が、上から落として止まるマス。
+  def columnTop(j: Int): Int = tops(j)
+
+  // j 列目の高さ（井戸の底から数えたブロックの段数、穴も含む）
+  def columnHeight(j: Int): Int = height - tops(j)
+
+  // 列ごとのいちばん下のブロックの行（ブロックのない列は -1）。piece の側で使う。
+  private lazy val bottoms: Array[Int] = {
+    val bs = Array.fill(width)(-1)
+    var i = 0
+    while (i < height) {
+      var rest = rows(i).mask
+      while (rest != 0) {
+        bs(java.lang.Long.numberOfTrailingZeros(rest)) = i
+        rest &= rest - 1
+      }
+      i += 1
+    }
+    bs
+  }
+
+  // 行が全部埋まったときのビット列
+  val fullMask: Long = Board.maskOf(width)
+
+  def rowMask(i: Int): Long = rows(i).mask
+
+  def colorIndex(i: Int, j: Int): Int = rows(i).cells(j)
+
+  def color(i: Int, j: Int): Color = Board.palette(colorIndex(i, j))
+
+  def isEmpty(i: Int, j: Int): Boolean = (rows(i).mask & (1L << j)) == 0
+
+  def isRowFull(i: Int): Boolean = rows(i).mask == fullMask
+
+  // i 行目のブロックの数
+  def rowCount(i: Int): Int = rows(i).count
+
+  def blockCount: Int = rows.foldLeft(0)((n, r) => n + r.count)
+
+  // 穴（上にブロックがある空きマス）の数。surface より下の行だけを見る。
+  def holeCount: Int = {
+    var covered = 0L
+    var n = 0
+    var i = surface
+    while (i < height) {
+      val m = rows(i).mask
+      n += java.lang.Long.bitCount(covered & ~m)
+      covered |= m
+      i += 1
+    }
+    n
+  }
+
+  // piece を (x, y) にずらして置いたときに、ブロックが重なるかどうか
+  //   piece の外枠がまるごと surface より上にあれば、行を見るまでもなく重ならない
+  def overlapAt(piece: Board, x: Int, y: Int): Boolean = {
+    if (y + piece.height <= surface) return false
+    val i0 = math.max(0, y)
+    val i1 = math.min(height, y + piece.height)
+    var i = i0
+    while (i < i1) {
+      if ((rows(i).mask & Board.shift(piece.rows(i - y).mask, x)) != 0) return true
+      i += 1
+    }
+    false
+  }
+
+  // piece を (x, y) にずらして置いたときに、井戸の外にはみ出すかどうか
+  def outOfBoundsAt(piece: Board, x: Int, y: Int): Boolean = {
+    var i = 0
+    while (i < piece.height) {
+      val m = piece.rows(i).mask
+      if (m != 0) {
+        if (y + i < 0 || y + i >= height) return true
+        if ((Board.shift(m, x) & ~fullMask) != 0 || Board.shift(Board.shift(m, x), -x) != m) return true
+      }
+      i += 1
+    }
+    false
+  }
+
+  // piece を (x, y) に置けないかどうか（はみ出すか、重なるか）
+  def collidesAt(piece: Board, x: Int, y: Int): Boolean =
+    outOfBoundsAt(piece, x, y) || overlapAt(piece, x, y)
+
+  def overlap(that: Board): Boolean = overlapAt(that, 0, 0)
+
+  // (x, y) に置ける piece を、あと何段落とせるか
+  //   piece の各列のいちばん下のブロックが、その列の columnTop より上にあれば
+  //   piece の幅の分だけ見れば済む。どれかの列で張り出しの下に潜り込んでいるときは、1 段ずつ確かめる。
+  def dropDistance(piece: Board, x: Int, y: Int): Int = {
+    val bs = piece.bottoms
+    var d = Int.MaxValue
+    var c = 0
+    while (c < bs.length) {
+      val b = bs(c)
+      if (b >= 0) {
+        val j = x + c
+        if (j < 0 || j >= width || y + b >= tops(j)) return probeDrop(piece, x, y)
+        d = math.min(d, tops(j) - 1 - (y + b))
+      }
+      c += 1
+    }
+    if (d == Int.MaxValue) 0 else d
+  }
+
+  // (x, y) から落とした piece が止まる行
+  def landingRow(piece: Board, x: Int, y: Int): Int = y + dropDistance(piece, x, y)
+
+  private def probeDrop(piece: Board, x: Int, y: Int): Int = {
+    var d = 0
+    while (!collidesAt(piece, x, y + d + 1)) d += 1
+    d
+  }
+
+  // piece を (x, y) にずらして合成する。はみ出した部分は捨てる。piece のかかる行だけを作り直す。
+  def combineAt(piece: Board, x: Int, y: Int): Board = {
+    var rs = rows
+    var full = fullRows
+    var ts = tops
+    var z = zobrist
+    val i0 = math.max(0, y)
+    val i1 = math.min(height, y + piece.height)
+    var i = i0
+    while (i < i1) {
+      val p = piece.rows(i - y)
+      val m = Board.shift(p.mask, x) & fullMask
+      if (m != 0) {
+        val r = rows(i)
+        val cs = r.cells.clone()
+        if (ts eq tops) ts = tops.clone()
+        var rest = m
+        while (rest != 0) {
+          val j = java.lang.Long.numberOfTrailingZeros(rest)
+          cs(j) = p.cells(j - x)
+          if (i < ts(j)) ts(j) = i
+          if ((r.mask & (1L << j)) == 0) z ^= Zobrist.cell(i, j)
+          rest &= rest - 1
+        }
+        val row = new Row(r.mask | m, cs)
+        rs = rs.updated(i, row)
+        if (row.count == width) full += i
+      }
+      i += 1
+    }
+    if (rs eq rows) this else new Board(width, rs, full, ts, z)
+  }
+
+  def combine(that: Board): Board = combineAt(that, 0, 0)
+
+  // 揃った行を取り除き、上に空の行を補う。揃っていない行はそのまま共有する。
+  //   fullRows にある行だけを見るので、井戸全体は調べない。
+  //   ずれるのは消した行のうちいちばん下のものより上の行だけなので、zobrist はその範囲だけ計算し直す。
+  def eraseFullRows: Board =
+    if (fullRows.isEmpty) this
+    else {
+      var rs = rows
+      var removed = 0
+      // 小さい番号から消すので、消した数だけ後の行の番号がずれる
+      fullRows.foreach { i =>
+        val k = i - removed
+        rs = rs.take(k) ++ rs.drop(k + 1)
+        removed += 1
+      }
+      val erased = Vector.fill(removed)(Row.empty(width)) ++ rs
+      val last = fullRows.max
+      val z = zobrist ^ Board.zobristOf(rows, surface, last + 1) ^ Board.zobristOf(erased, surface, last + 1)
+      new Board(width, erased, BitSet.empty, Board.topsOf(width, erased), z)
+    }
+
+  def fullRowCount: Int = fullRows.size
+
+  // List[List[Color]] への変換
+  def toShape: S.Shape =
+    List.tabulate(height, width)((i, j) => color(i, j))
+
+  override def equals(other: Any): Boolean = other match {
+    case that: Board =>
+      width == that.width && height == that.height &&
+      rows.corresponds(that.rows)((a, b) => (a eq b) || (a.mask == b.mask && java.util.Arrays.equals(a.cells, b.cells)))
+    case _ => false
+  }
+
+  // 色は見ないが、等しい Board は同じ値になる
+  override def hashCode: Int = 31 * width + java.lang.Long.hashCode(zobrist)
+
+  // S.showShape(toShape) と同じ文字列。行の文字列は Row ごとに一度だけ作り、共有される行では使い回す。
+  override def toString: String = {
+    val sb = new java.lang.StringBuilder(height * (width + 1))
+    var i = 0
+    while (i < height) {
+      if (i > 0) sb.append('\n')
+      sb.append(rows(i).text)
+      i += 1
+    }
+    sb.toString
+  }
+}
+
+object Board {
+  // 1 行に詰め込めるブロックの数
+  val MaxWidth = 64
+
+  // 1 行：占有ビット列（j ビット目が j 列目）と、色の番号（0 は空きマス）。作ったあとは変えない。
+  final class Row private[tetris] (val mask: Long, private[tetris] val cells: Array[Byte]) {
+    // ブロックの数
+    val count: Int = java.lang.Long.bitCount(mask)
+
+    // S.showRow と同じ文字列
+    private[tetris] lazy val text: String = {
+      val cs = new Array[Char](cells.length)
+      var j = 0
+      while (j < cs.length) {
+        cs(j) = symbols(cells(j))
+        j += 1
+      }
+      new String(cs)
+    }
+  }
+
+  object Row {
+    private val empties = Array.tabulate(MaxWidth + 1)(w => new Row(0L, new Array[Byte](w)))
+
+    // 幅 width の空の行（共有される）
+    def empty(width: Int): Row = empties(width)
+  }
+
+  // 色の番号。0 は空きマス。
+  val palette: IndexedSeq[Color] =
+    Vector(Transparent) ++ S.colors ++
+    Vector(Black, Blue, Cyan, Green, Magenta, Orange, Pink, Red, White, Yellow)
+
+  // 色の番号から S.showBlock の記号を引く表
+  private val symbols: Array[Char] = palette.map(S.showBlock).toArray
+
+  private val paletteIndex: Map[Color, Byte] =
+    palette.zipWithIndex.map { case (c, i) => (c, i.toByte) }.toMap
+
+  def indexOf(c: Color): Byte = paletteIndex.get(c) match {
+    case Some(i) => i
+    case None => throw new IllegalArgumentException("Board: unsupported color " + c)
+  }
+
+  def maskOf(width: Int): Long = if (width >= 64) -1L else (1L << width) - 1
+
+  // 正なら右（列番号の大きい方）、負なら左にずらす
+  def shift(m: Long, x: Int): Long =
+    if (x >= 64 || x <= -64) 0L
+    else if (x >= 0) m << x
+    else m >>> -x
+
+  def empty(width: Int, height: Int): Board = {
+    require(0 <= width && width <= MaxWidth, "Board: width must be within 0.." + MaxWidth)
+    new Board(width, Vector.fill(height)(Row.empty(width)), BitSet.empty, Array.fill(width)(height), 0L)
+  }
+
+  // from 行目から until 行目の手前までの Zobrist ハッシュ
+  private def zobristOf(rows: Vector[Row], from: Int, until: Int): Long = {
+    var z = 0L
+    var i = from
+    while (i < until) {
+      z ^= Zobrist.row(i, rows(i).mask)
+      i += 1
+    }
+    z
+  }
+
+  // 列ごとのいちばん上のブロックの行。上から見ていき、すべての列が見つかったら止める。
+  private def topsOf(width: Int, rows: Vector[Row]): Array[Int] = {
+    val ts = Array.fill(width)(rows.length)
+    val all = maskOf(width)
+    var seen = 0L
+    var i = 0
+    while (i < rows.length && seen != all) {
+      var fresh = rows(i).mask & ~seen
+      seen |= fresh
+      while (fresh != 0) {
+        ts(java.lang.Long.numberOfTrailingZeros(fresh)) = i
+        fresh &= fresh - 1
+      }
+      i += 1
+    }
+    ts
+  }
+
+  // List[List[Color]] からの変換。行の長さが揃っていない場合は最長の行に合わせる。
+  def fromShape(shape: S.Shape): Board = {
+    val width = shape.foldLeft(0)((w, row) => math.max(w, row.length))
+    require(width <= MaxWidth, "Board: width must be within 0.." + MaxWidth)
+    val rows = shape.toVector.map { row =>
+      var mask = 0L
+      val cells = new Array[Byte](width)
+      row.zipWithIndex.foreach { case (c, j) =>
+        val k = indexOf(c)
+        if (k != 0) {
+          mask |= 1L << j
+          cells(j) = k
+        }
+      }
+      if (mask == 0) Row.empty(width) else new Row(mask, cells)
+    }
+    fromRows(width, rows)
+  }
+
+  // 行の列から作る（行の幅はすべて width であること）
+  private[tetris] def fromRows(width: Int, rows: Vector[Row]): Board = {
+    require(0 <= width && width <= MaxWidth, "Board: width must be within 0.." + MaxWidth)
+    val full = BitSet(rows.indices.filter(i => width > 0 && rows(i).count == width): _*)
+    new Board(width, rows, full, topsOf(width, rows), zobristOf(rows, 0, rows.length))
+  }
+}
+
+// Board のテスト（runMain tetris.BoardTest）
+object BoardTest extends App {
+  import ShapeLib._
+
+  // Board（ビットボード表現）
+  println("Board")
+  println(Board.fromShape(shapeZ).toShape == shapeZ)
+  println(Board.fromShape(shapeZ).toString == showShape(shapeZ))
+  println(make(List("ZZ ", " ZZ")) == shapeZ)
+  println(Board.fromShape(shapeI).blockCount == 4)
+  println(Board.fromShape(shapeI).overlap(Board.fromShape(shapeZ)) == true)
+  println(Board.empty(3, 4).overlapAt(Board.fromShape(shapeZ), 1, 1) == false)
+  println(Board.empty(3, 4).collidesAt(Board.fromShape(shapeZ), 1, 0) == true)
+  println(Board.empty(3, 4).combineAt(Board.fromShape(shapeT), 0, 2).isRowFull(2) == true)
+  println(Board.empty(3, 4).combineAt(Board.fromShape(shapeT), 0, 2).eraseFullRows.blockCount == 1)
+  println(Board.empty(3, 4).combineAt(Board.fromShape(shapeT), 0, 2).fullRows == scala.collection.immutable.BitSet(2))
+  println(Board.empty(3, 4).combineAt(Board.fromShape(shapeT), 0, 2).rowCount(3) == 1)
+  println(Board.empty(3, 4).combineAt(Board.fromShape(shapeT), 0, 2).columnTop(1) == 2)
+  println(Board.empty(3, 4).combineAt(Board.fromShape(shapeT), 0, 2).eraseFullRows.columnHeight(1) == 1)
+  println(Board.empty(3, 4).landingRow(Board.fromShape(shapeZ), 0, 0) == 2)
+  println(Board.empty(3, 4).combineAt(Board.fromShape(shapeT), 0, 2).eraseFullRows.zobrist ==
+          Board.fromShape(Board.empty(3, 4).combineAt(Board.fromShape(shapeT), 0, 2).eraseFullRows.toShape).zobrist)
+  println(Board.fromShape(List(List(Red, Red, Red), List(), List(), List(), List(), List())).landingRow(Board.fromShape(shapeI), 1, 1) == 2)
+}
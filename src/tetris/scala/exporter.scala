@@ -0,0 +1,323 @@
+package tetris
+
+import java.io.{BufferedInputStream, BufferedOutputStream, Closeable, DataInputStream, EOFException, InputStream, OutputStream}
+import java.nio.ByteBuffer
+import java.nio.charset.StandardCharsets.{US_ASCII, UTF_8}
+import java.util.concurrent.{ArrayBlockingQueue, TimeUnit}
+import java.util.concurrent.atomic.LongAdder
+import java.util.concurrent.locks.ReentrantReadWriteLock
+import java.util.zip.{GZIPInputStream, GZIPOutputStream}
+
+// 学習・分析用のデータ（局面、piece、操作、結果の組）を書き出す
+//   シミュレーションのスレッドは、自分の Sink の Batch（ByteBuffer）にサンプルを書き込み、
+//   Batch がいっぱいになったら有界のキューに渡すだけで、ファイルには触れない。
+//   書き出しは専用のスレッドが Batch ごとにまとめて行う（BufferedOutputStream、gzip なら GZIP で圧縮）。
+//   書き出しが追いつかずキューがいっぱいのときは、offerWaitMillis だけ待っても空かなければ、
+//   その Batch を捨てて dropped に数える（シミュレーションのスレッドが書き出しを待ち続けることはない）。
+//   blockWhenFull のときだけ、キューが空くまで待つ（書き出しのスレッドが止まっていれば捨てる）。
+//   書き出しのスレッドで起きた例外は覚えておき、close で投げる。
+//
+//   形式："TWEX"、版（1 バイト）に続けて、サンプルを並べる。サンプルは
+//     長さ（4 バイト）、操作の前の world（Snapshot）、
+//     操作：0 = tick、1 = キー（名前の長さ 1 バイトと UTF-8 の名前）、
+//     結果：消した行の数（1 バイト）、印（1 バイト。1 = piece を積んだ、2 = ゲームオーバー）
+final class Exporter(out: OutputStream, gzip: Boolean = false,
+                     val batchSize: Int = Exporter.DefaultBatchSize,
+                     val queueSize: Int = Exporter.DefaultQueueSize,
+                     val blockWhenFull: Boolean = false,
+                     val offerWaitMillis: Long = Exporter.DefaultOfferWaitMillis) extends Closeable {
+  import Exporter._
+
+  require(batchSize > 0 && queueSize > 0, "Exporter: batchSize and queueSize must be positive")
+  require(offerWaitMillis >= 0, "Exporter: offerWaitMillis must not be negative")
+
+  private val queue = new ArrayBlockingQueue[Batch](queueSize)
+  // 書き終わった Batch の置き場（使い回す）
+  private val free = new ArrayBlockingQueue[Batch](queueSize + 1)
+
+  // 書いたサンプルの数と、捨てたサンプルの数
+  val written = new LongAdder
+  val dropped = new LongAdder
+
+  @volatile private var failure: Throwable = null
+  // 閉じた後に Batch が渡されないよう、渡すときは読み出しのロック、閉じるときは書き込みのロックをとる
+  private val lock = new ReentrantReadWriteLock
+  private var closed = false
+
+  private val stream = new BufferedOutputStream(
+    if (gzip) new GZIPOutputStream(out, batchSize) else out, batchSize)
+
+  private val writer = new Thread(() => loop(), "Exporter writer")
+  writer.setDaemon(true)
+  writer.start()
+
+  // サンプルを書き込む口。スレッドごとに 1 つ作り、使い終わったら flush すること。
+  //   Batch は書き込むときに借り、flush で手放すので、使い終わった Sink は何も持たない。
+  def sink(): Sink = new Sink(this)
+
+  private[tetris] def acquire(): Batch = {
+    val b = free.poll()
+    if (b != null) b else new Batch(batchSize)
+  }
+
+  // 書き終わった（または捨てた）Batch を置き場に戻す
+  private[tetris] def release(b: Batch): Unit = {
+    b.reset()
+    if (b.buf.capacity == batchSize) free.offer(b)
+  }
+
+  // b をキューに渡す。キューが空かないとき、または書き出しに失敗していれば、捨てて false。
+  private[tetris] def submit(b: Batch): Boolean = {
+    lock.readLock.lock()
+    try {
+      if (closed) throw new IllegalStateException("Exporter: already closed")
+      if (failure == null && handOver(b)) true
+      else {
+        dropped.add(b.samples)
+        release(b)
+        false
+      }
+    } finally lock.readLock.unlock()
+  }
+
+  // b をキューに入れる。書き出しのスレッドが止まっていれば、いつまでも待つことはない。
+  private def handOver(b: Batch): Boolean =
+    if (!blockWhenFull) queue.offer(b, offerWaitMillis, TimeUnit.MILLISECONDS)
+    else {
+      var done = false
+      while (!done && writer.isAlive) done = queue.offer(b, LivenessMillis, TimeUnit.MILLISECONDS)
+      done
+    }
+
+  // 書き出しに失敗したら、その後の Batch は書かずに捨てる（キューは最後まで空にする）
+  //   guard の外で例外が起きてスレッドが止まるときも、それを覚えてキューの残りを捨てる
+  private def loop(): Unit =
+    try {
+      guard {
+        stream.write(Magic)
+        stream.write(Version)
+      }
+      var done = false
+      while (!done) {
+        val b = queue.take()
+        if (b eq End) done = true
+        else {
+          guard {
+            stream.write(b.buf.array, 0, b.buf.position())
+            written.add(b.samples)
+          }
+          if (failure != null) dropped.add(b.samples)
+          release(b)
+        }
+      }
+      guard(stream.flush())
+    } catch {
+      case e: Throwable =>
+        if (failure == null) failure = e
+        discardQueued()
+    }
+
+  private def guard(body: => Unit): Unit =
+    if (failure == null) {
+      try body
+      catch { case e: Throwable => failure = e }
+    }
+
+  // キューに残った Batch を捨てて数える
+  private def discardQueued(): Unit = {
+    var b = queue.poll()
+    while (b != null) {
+      if (b ne End) dropped.add(b.samples)
+      b = queue.poll()
+    }
+  }
+
+  // 残りを書き出して閉じる（ここだけは書き終わるまで待つ）。Sink は先に flush しておくこと。
+  def close(): Unit = synchronized {
+    lock.writeLock.lock()
+    val first = try {
+      val c = closed
+      closed = true
+      c
+    } finally lock.writeLock.unlock()
+    if (!first) {
+      var ended = false
+      while (!ended && writer.isAlive) ended = queue.offer(End, LivenessMillis, TimeUnit.MILLISECONDS)
+      writer.join()
+      discardQueued()
+      try stream.close()
+      catch { case e: Throwable => if (failure == null) failure = e }
+      if (failure != null) throw failure
+    }
+  }
+}
+
+object Exporter {
+  private val Magic = "TWEX".getBytes(US_ASCII)
+  val Version = 1
+
+  val DefaultBatchSize: Int = 1 << 16
+  val DefaultQueueSize = 64
+  val DefaultOfferWaitMillis = 10L
+
+  // キューが空くのを待つ間に、書き出しのスレッドが止まっていないかを見る間隔
+  private val LivenessMillis = 100L
+
+  private[tetris] val TickTag = 0
+  private[tetris] val MaxKeyBytes = 255
+  private[tetris] val KeyTag = 1
+
+  private[tetris] val Locked = 1
+  private[tetris] val GameOver = 2
+
+  // サンプルをためる ByteBuffer と、そこにあるサンプルの数
+  private[tetris] final class Batch(size: Int) {
+    val buf: ByteBuffer = ByteBuffer.allocate(size)
+    var samples = 0
+
+    def reset(): Unit = {
+      buf.clear()
+      samples = 0
+    }
+  }
+
+  // 書き出しのスレッドを止める印
+  private val End = new Batch(0)
+
+  // 1 つのスレッドからサンプルを書き込む
+  final class Sink private[tetris] (exporter: Exporter) {
+    private var batch: Batch = null
+
+    // before に input を与えて after になった。lines はそのときに消した行の数。
+    def add(before: TetrisWorld, input: Simulator.Input, after: TetrisWorld, lines: Int): Unit = {
+      val key = input match {
+        case Simulator.Key(k) => k.getBytes(UTF_8)
+        case Simulator.Tick => null
+      }
+      // 名前の長さは 1 バイトで書くので、それより長い名前は書けない
+      require(key == null || key.length <= MaxKeyBytes,
+              "Exporter: key name longer than " + MaxKeyBytes + " bytes in UTF-8")
+      val n = Snapshot.size(before) + 1 + (if (key == null) 0 else 1 + key.length) + 2
+      if (batch != null && batch.buf.remaining < 4 + n) flush()
+      // 1 つで Batch に収まらないサンプルは、専用の Batch で渡す
+      if (batch == null) batch = if (4 + n <= exporter.batchSize) exporter.acquire() else new Batch(4 + n)
+      val buf = batch.buf
+      buf.putInt(n)
+      Snapshot.write(before, buf)
+      if (key == null) buf.put(TickTag.toByte)
+      else {
+        buf.put(KeyTag.toByte)
+        buf.put(key.length.toByte)
+        buf.put(key)
+      }
+      buf.put(math.min(lines, 127).toByte)
+      buf.put(((if (after.board ne before.board) Locked else 0) | (if (after.gameOver) GameOver else 0)).toByte)
+      batch.samples += 1
+    }
+
+    // たまったサンプルを書き出しのスレッドに渡し、Batch を手放す（I/O は待たない）
+    def flush(): Unit =
+      if (batch != null) {
+        // 渡せなかった Batch も、submit が置き場に戻している
+        if (batch.samples > 0) exporter.submit(batch)
+        else exporter.release(batch)
+        batch = null
+      }
+  }
+
+  // 書き出したデータの 1 つのサンプル
+  final case class Sample(before: TetrisWorld, input: Simulator.Input, lines: Int, locked: Boolean, gameOver: Boolean)
+
+  // in から読んだサンプルを順に f に渡す。渡した数を返す。
+  def foreach(in: InputStream, gzip: Boolean = false)(f: Sample => Unit): Long = {
+    val data = new DataInputStream(new BufferedInputStream(if (gzip) new GZIPInputStream(in) else in))
+    val magic = new Array[Byte](Magic.length)
+    data.readFully(magic)
+    if (!java.util.Arrays.equals(magic, Magic))
+      throw new IllegalArgumentException("Exporter: not an exported stream")
+    val version = data.readUnsignedByte()
+    if (version != Version)
+      throw new IllegalArgumentException("Exporter: unsupported version " + version)
+    var count = 0L
+    var done = false
+    while (!done) {
+      val n = try data.readInt() catch { case _: EOFException => -1 }
+      if (n < 0) done = true
+      else {
+        val bytes = new Array[Byte](n)
+        data.readFully(bytes)
+        val buf = ByteBuffer.wrap(bytes)
+        val before = Snapshot.read(buf)
+        val input =
+          if (buf.get() == TickTag) Simulator.Tick
+          else {
+            val key = new Array[Byte](buf.get() & 0xff)
+            buf.get(key)
+            Simulator.Key(new String(key, UTF_8))
+          }
+        val lines = buf.get().toInt
+        val flags = buf.get()
+        f(Sample(before, input, lines, (flags & Locked) != 0, (flags & GameOver) != 0))
+        count += 1
+      }
+    }
+    count
+  }
+}
+
+// Exporter のテスト（runMain tetris.ExporterTest）
+object ExporterTest extends App {
+  // Exporter（書き出して読み戻す。Batch は小さくして、何度もキューに渡す）
+  println("Exporter")
+  for (gzip <- List(false, true)) {
+    val bytes = new java.io.ByteArrayOutputStream
+    val exporter = new Exporter(bytes, gzip, batchSize = 4096, queueSize = 2, blockWhenFull = true)
+    val sink = exporter.sink()
+    val inputs = Simulator.randomInputs(new scala.util.Random(42)).take(500).toVector
+    val result = Simulator.run(TetrisWorld.start(10, 20, 42), inputs.iterator, samples = Some(sink))
+    sink.flush()
+    exporter.close()
+    val samples = scala.collection.mutable.ArrayBuffer[Exporter.Sample]()
+    val count = Exporter.foreach(new java.io.ByteArrayInputStream(bytes.toByteArray), gzip)(samples += _)
+    println(count == result.ticks + result.keys && exporter.written.sum == count && exporter.dropped.sum == 0)
+    println(samples.map(_.input) == inputs.take(count.toInt))
+    // 読み戻した局面に入力を与えると、次のサンプルの局面になる
+    val replayed = samples.scanLeft(TetrisWorld.start(10, 20, 42)) { (w, sample) =>
+      sample.input match {
+        case Simulator.Tick => w.tick()
+        case Simulator.Key(k) => w.keyEvent(k)
+      }
+    }
+    println(samples.map(_.before) == replayed.init)
+    println(samples.count(_.locked) == result.pieces && samples.map(_.lines.toLong).sum == result.lines)
+  }
+
+  // 1 バイトに収まらない長さのキーの名前は書かない
+  println("Exporter key")
+  val keyExporter = new Exporter(new java.io.ByteArrayOutputStream)
+  val keySink = keyExporter.sink()
+  val keyWorld = TetrisWorld.start(10, 20, 42)
+  keySink.add(keyWorld, Simulator.Key("あ" * 85), keyWorld, 0)
+  println((try { keySink.add(keyWorld, Simulator.Key("あ" * 86), keyWorld, 0); false }
+           catch { case _: IllegalArgumentException => true }) == true)
+  keySink.flush()
+  keyExporter.close()
+  println(keyExporter.written.sum == 1)
+
+  // 書き出しで IOException 以外の例外が起きても、渡す側も close も待ち続けず、close でその例外を投げる
+  println("Exporter failure")
+  for (block <- List(false, true)) {
+    val broken = new OutputStream {
+      def write(b: Int): Unit = throw new IllegalStateException("broken")
+      override def write(b: Array[Byte], off: Int, len: Int): Unit = throw new IllegalStateException("broken")
+    }
+    val exporter = new Exporter(broken, batchSize = 256, queueSize = 1, blockWhenFull = block)
+    val sink = exporter.sink()
+    val result = Simulator.run(TetrisWorld.start(10, 20, 42), Simulator.randomInputs(new scala.util.Random(42)),
+                               maxTicks = 200, samples = Some(sink))
+    sink.flush()
+    val thrown = try { exporter.close(); None } catch { case e: IllegalStateException => Some(e.getMessage) }
+    println(thrown == Some("broken"))
+    println(exporter.written.sum == 0 && exporter.dropped.sum == result.ticks + result.keys)
+  }
+}
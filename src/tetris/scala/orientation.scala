@@ -0,0 +1,76 @@
+package tetris
+
+import tetris.{ShapeLib => S}
+
+// 7 種類のテトロミノの 4 つの向きを、クラスの初期化時に一度だけ作っておく表
+object Orientations {
+  // 反時計回りに 90 度回転する
+  def rotate(shape: S.Shape): S.Shape = shape.transpose.reverse
+
+  // kind 番目のテトロミノを rotation 回だけ回転した向き
+  final class Orientation(val kind: Int, val rotation: Int, val shape: S.Shape) {
+    // 外接矩形（高さ、幅）
+    val height: Int = shape.length
+    val width: Int = if (shape.isEmpty) 0 else shape.head.length
+
+    // ビットボード表現
+    val packed: Board = Board.fromShape(shape)
+
+    def next: Orientation = Orientations(kind, rotation + 1)
+
+    override def toString: String = "Orientation(" + S.blockSymbols(kind) + ", " + rotation + ")"
+  }
+
+  val Rotations = 4
+
+  val table: Vector[Vector[Orientation]] =
+    S.allShapes.toVector.zipWithIndex.map { case (shape, kind) =>
+      Vector.iterate(shape, Rotations)(rotate).zipWithIndex.map { case (s, r) =>
+        new Orientation(kind, r, s)
+      }
+    }
+
+  def apply(kind: Int, rotation: Int): Orientation = table(kind)(rotation & (Rotations - 1))
+
+  // 表にある shape はまず参照で探し、見つからなければ値で探す
+  private val byIdentity: java.util.IdentityHashMap[S.Shape, Orientation] = {
+    val m = new java.util.IdentityHashMap[S.Shape, Orientation]()
+    for (os <- table; o <- os) m.put(o.shape, o)
+    m
+  }
+
+  private val byValue: Map[S.Shape, Orientation] =
+    table.flatten.reverse.map(o => (o.shape, o)).toMap
+
+  private def lookup(shape: S.Shape): Orientation = {
+    val o = byIdentity.get(shape)
+    if (o != null) o else byValue.getOrElse(shape, null)
+  }
+
+  def of(shape: S.Shape): Option[Orientation] = Option(lookup(shape))
+
+  // shape を回転したもの。表にあれば新しいリストは作らない。
+  def rotated(shape: S.Shape): S.Shape = {
+    val o = lookup(shape)
+    if (o != null) o.next.shape else rotate(shape)
+  }
+
+  // shape のビットボード表現。表にあれば作り直さない。
+  def packed(shape: S.Shape): Board = {
+    val o = lookup(shape)
+    if (o != null) o.packed else Board.fromShape(shape)
+  }
+}
+
+// Orientations のテスト（runMain tetris.OrientationsTest）
+object OrientationsTest extends App {
+  import ShapeLib._
+
+  // Orientations（回転の表）
+  println("Orientations")
+  println(Orientations(0, 1).shape == Orientations.rotate(shapeI))
+  println(Orientations(4, 4).shape eq shapeZ)
+  println(Orientations.rotated(Orientations(2, 3).shape) eq shapeT)
+  println(Orientations(4, 1).height == 3 && Orientations(4, 1).width == 2)
+  println(Orientations(6, 2).packed == Board.fromShape(Orientations(6, 2).shape))
+}
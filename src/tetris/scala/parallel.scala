@@ -0,0 +1,190 @@
+package tetris
+
+import java.util.concurrent.{ConcurrentHashMap, ConcurrentLinkedQueue, ForkJoinPool, RecursiveTask}
+import java.util.concurrent.atomic.{AtomicInteger, DoubleAccumulator, LongAdder}
+
+import Search.{Choice, Evaluator, Placement}
+
+// 先読みの探索を ForkJoinPool で並列に行う
+//   最初の piece の置き場所ごとに 1 つのタスクを作り、根から splitDepth 段目までは
+//   次の piece の置き場所ごとにさらにタスクを分ける。それより深いところは、
+//   スレッドごとの Search.Searcher で順に読む。空いたスレッドは他のスレッドのタスクを盗んで働く。
+//   スレッドごとの Searcher とその置換表は、探索をまたいで使い回す。探索ごとに番号をつけ、
+//   スレッドがその探索で初めて Searcher を使うときに置換表の newSearch を呼ぶ（前の探索の枠を先に追い出す）。
+//
+//   枝刈り：最初の置き場所は、置いた直後の評価のよい順に並べて読む。
+//   どこかのスレッドが見つけた最善の評価を全スレッドで共有し、置いた直後の評価に margin を足しても
+//   それに届かない置き場所は読まない。margin が無限大なら枝刈りはせず、逐次の探索と同じ手を選ぶ。
+//   evaluator は複数のスレッドから同時に呼ばれる。
+final class ParallelSearch(val width: Int, val height: Int,
+                           val evaluator: Evaluator = Search.DefaultEvaluator,
+                           val pool: ForkJoinPool = ForkJoinPool.commonPool(),
+                           val splitDepth: Int = 1,
+                           val margin: Double = Double.PositiveInfinity) {
+  require(splitDepth >= 0, "ParallelSearch: splitDepth must not be negative")
+
+  // スレッドの Searcher と、それを最後に使った探索の番号
+  private final class Slot(val searcher: Search.Searcher) {
+    var generation = -1
+  }
+
+  private val searchers = new ConcurrentLinkedQueue[Search.Searcher]()
+  private val local = ThreadLocal.withInitial[Slot] { () =>
+    val s = new Search.Searcher(width, height, evaluator)
+    searchers.add(s)
+    new Slot(s)
+  }
+  private val generations = new AtomicInteger
+
+  // 評価した井戸の数（全探索の合計）。探索していないときに読むこと。
+  def positions: Long = {
+    var n = 0L
+    searchers.forEach(s => n += s.positions)
+    n
+  }
+
+  // 読まずに済ませた置き場所の数
+  val pruned = new LongAdder
+
+  // kind 番目の piece（向き rotation・位置 (x, y)）から、queue を含めて depth 個を読んだ最善の手
+  def best(board: Board, kind: Int, rotation: Int, x: Int, y: Int,
+           queue: IndexedSeq[Int], depth: Int): Option[Choice] =
+    new Run(queue, generations.getAndIncrement() & Int.MaxValue).best(board, kind, rotation, x, y, depth)
+
+  def best(world: TetrisWorld, queue: IndexedSeq[Int], depth: Int): Option[Choice] =
+    Orientations.of(world.piece._2).flatMap { o =>
+      best(world.board, o.kind, o.rotation, world.piece._1._1, world.piece._1._2, queue, depth)
+    }
+
+  // 1 回の探索。generation はその番号。
+  private final class Run(queue: IndexedSeq[Int], generation: Int) {
+    // 分けて読む段の評価（複数のスレッドから読み書きする）
+    private val memo = new ConcurrentHashMap[(Board, Int), java.lang.Double]()
+    private val bestScore = new DoubleAccumulator((a: Double, b: Double) => math.max(a, b), Double.NegativeInfinity)
+
+    // このスレッドの Searcher（この探索で初めて使うなら、置換表の世代を進める）
+    private def searcher(): Search.Searcher = {
+      val slot = local.get
+      if (slot.generation != generation) {
+        slot.generation = generation
+        slot.searcher.table.newSearch()
+      }
+      slot.searcher
+    }
+
+    def best(board: Board, kind: Int, rotation: Int, x: Int, y: Int, depth: Int): Option[Choice] = {
+      val s = searcher()
+      val first = s.moves.placements(board, kind, rotation, x, y).map { p =>
+        val (next, lines) = Search.place(board, p)
+        new Candidate(p, next, s.evaluate(next, lines), depth)
+      }.sortBy(-_.shallow)
+      pool.invoke(new Root(first))
+    }
+
+    private final class Root(candidates: IndexedSeq[Candidate]) extends RecursiveTask[Option[Choice]] {
+      def compute(): Option[Choice] = {
+        candidates.foreach(_.fork())
+        var choice: Choice = null
+        candidates.foreach { c =>
+          val score = c.join()
+          if (choice == null || score > choice.score) choice = Choice(c.placement, score)
+        }
+        Option(choice)
+      }
+    }
+
+    // 最初の置き場所 placement から先を読む
+    private final class Candidate(val placement: Placement, next: Board, val shallow: Double, depth: Int)
+        extends RecursiveTask[java.lang.Double] {
+      def compute(): java.lang.Double = {
+        val score =
+          if (depth <= 1 || queue.isEmpty) shallow
+          else if (shallow + margin < bestScore.get) {
+            pruned.increment()
+            Double.NegativeInfinity
+          }
+          else new Node(next, 0, depth - 1, 1).compute().doubleValue
+        bestScore.accumulate(score)
+        score
+      }
+    }
+
+    // queue の index 番目から depth 個を置いたときの最善の評価。level は根からの段数。
+    private final class Node(board: Board, index: Int, depth: Int, level: Int)
+        extends RecursiveTask[java.lang.Double] {
+      def compute(): java.lang.Double =
+        if (level > splitDepth) searcher().value(board, queue, index, depth)
+        else {
+          val key = (board, index)
+          val known = memo.get(key)
+          if (known != null) known
+          else {
+            val last = depth <= 1 || index + 1 >= queue.length
+            val s = searcher()
+            val children = s.moves.placements(board, queue(index), 0, TetrisWorld.spawnX(width), 0).map { p =>
+              val (next, lines) = Search.place(board, p)
+              if (last) Left(s.evaluate(next, lines))
+              else Right(new Node(next, index + 1, depth - 1, level + 1).fork())
+            }
+            var v = Double.NegativeInfinity
+            children.foreach { c =>
+              val score = c match {
+                case Left(s) => s
+                case Right(task) => task.join().doubleValue
+              }
+              if (score > v) v = score
+            }
+            memo.put(key, v)
+            v
+          }
+        }
+    }
+  }
+}
+
+// ParallelSearch のテスト（runMain tetris.ParallelSearchTest）
+object ParallelSearchTest extends App {
+  val worlds = List(1L, 42L, 2024L).map(seed => Iterator.iterate(TetrisWorld.start(10, 20, seed))(_.hardDrop).drop(3).next())
+  val sequential = new Search.Searcher(10, 20)
+  val pool = new ForkJoinPool(4)
+
+  // 枝刈りをしなければ、分ける段数によらず逐次の探索と同じ評価になる
+  println("ParallelSearch")
+  for (splitDepth <- 0 to 2) {
+    val parallel = new ParallelSearch(10, 20, pool = pool, splitDepth = splitDepth)
+    println(worlds.forall { world =>
+      val queue = Search.preview(world, 2)
+      (1 to 3).forall { depth =>
+        val p = parallel.best(world, queue, depth)
+        val s = sequential.best(world, queue, depth)
+        p.map(_.score) == s.map(_.score) &&
+          // 選んだ置き場所も、逐次の探索で読み直すと同じ評価
+          p.forall { c =>
+            val (next, lines) = Search.place(world.board, c.placement)
+            c.score == (if (depth == 1) sequential.evaluate(next, lines) else sequential.value(next, queue, 0, depth - 1))
+          }
+      }
+    })
+    println(parallel.pruned.sum == 0)
+  }
+
+  // depth 1 では先を読まず、最初の置き場所ごとに 1 回ずつ評価するだけ
+  val shallow = new ParallelSearch(10, 20, pool = pool)
+  val world = worlds.head
+  val queue = Search.preview(world, 2)
+  val kind = Orientations.of(world.piece._2).get.kind
+  val placements = new Search.MoveGen(10, 20).placements(world.board, kind, 0, TetrisWorld.spawnX(10), 0).length
+  shallow.best(world, queue, 1)
+  println(shallow.positions == placements)
+
+  // 共有した最善の評価による枝刈り：1 スレッドで分けずに読めば、置き場所を 1 つ読み終えてから次を始めるので、
+  // 届くはずのない margin では、残りの置き場所はすべて読まずに済ませる
+  val single = new ForkJoinPool(1)
+  val pruning = new ParallelSearch(10, 20, pool = single, splitDepth = 0, margin = Double.NegativeInfinity)
+  val pruned = pruning.best(world, queue, 3)
+  println(pruning.pruned.sum == placements - 1)
+  println(pruned.exists(c => c.score > Double.NegativeInfinity && c.score <= sequential.best(world, queue, 3).get.score))
+
+  pool.shutdown()
+  single.shutdown()
+}
@@ -0,0 +1,74 @@
+package tetris
+
+import tetris.{ShapeLib => S}
+
+// 次に出るテトロミノの列（7-bag）
+//   7 種類を 1 組（bag）とし、組の中の順番だけを乱数で決めて出す。どの種類も 13 個以上あいだが空かない。
+//   先読みのために、次から size 個の種類を queue に 3 ビットずつ詰めて持つ（下位が先に出るもの）。
+//   値なので TetrisWorld に持たせたまま持ち回せ、peek は O(1)、next で作るのは新しい Pieces 1 つだけ。
+//   乱数は Rng なので、ゲームごとに独立していて、種が同じなら同じ列になる。
+final case class Pieces(queue: Long, size: Int, bag: Int, rng: Rng) {
+  import Pieces._
+
+  // i 個先（0 が次に出るもの）の種類
+  def peek(i: Int): Int = {
+    require(0 <= i && i < size, "Pieces: preview index out of range: " + i)
+    ((queue >>> (Bits * i)) & Mask).toInt
+  }
+
+  // 先読みできる種類の列
+  def preview: IndexedSeq[Int] = IndexedSeq.tabulate(size)(peek)
+
+  // 次の種類を取り出し、列の最後に bag から 1 つ補う。bag が空になったら 7 種類を入れ直す。
+  def next: (Int, Pieces) = {
+    val (n, rng1) = rng.nextInt(Integer.bitCount(bag))
+    val kind = nthBit(bag, n)
+    val rest = bag & ~(1 << kind)
+    val queue1 = (queue >>> Bits) | (kind.toLong << (Bits * (size - 1)))
+    (peek(0), Pieces(queue1, size, if (rest == 0) FullBag else rest, rng1))
+  }
+}
+
+object Pieces {
+  private val Bits = 3
+  private val Mask = (1L << Bits) - 1
+
+  val Kinds: Int = S.allShapes.length
+  private val FullBag = (1 << Kinds) - 1
+
+  // queue（Long）に入る数
+  val MaxPreview: Int = 64 / Bits
+  val DefaultPreview = 5
+
+  // rng から始めて、size 個を先読みできる列
+  def apply(rng: Rng, size: Int = DefaultPreview): Pieces = {
+    require(1 <= size && size <= MaxPreview, "Pieces: preview size must be within 1.." + MaxPreview)
+    var p = Pieces(0L, size, FullBag, rng)
+    var i = 0
+    while (i < size) {
+      p = p.next._2
+      i += 1
+    }
+    p
+  }
+
+  // mask の n 番目（0 から）に小さい 1 のビットの位置
+  private def nthBit(mask: Int, n: Int): Int = {
+    var m = mask
+    var i = 0
+    while (i < n) {
+      m &= m - 1
+      i += 1
+    }
+    Integer.numberOfTrailingZeros(m)
+  }
+}
+
+// Pieces のテスト（runMain tetris.PiecesTest）
+object PiecesTest extends App {
+  // Pieces（7-bag）
+  println("Pieces")
+  println(Iterator.iterate(Pieces(Rng(42)))(_.next._2).take(7).map(_.peek(0)).toSet == (0 until 7).toSet)
+  println(Pieces(Rng(42), 3).preview == Pieces(Rng(42), 3).preview)
+  println(Pieces(Rng(42)).next._2.peek(0) == Pieces(Rng(42)).peek(1))
+}
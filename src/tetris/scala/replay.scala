@@ -0,0 +1,167 @@
+package tetris
+
+import java.io.{BufferedInputStream, FileInputStream}
+
+import scala.collection.mutable.ArrayBuffer
+
+import sdraw.Recording
+import sgeometry.Pos
+
+// 記録（sdraw.Recorder）から TetrisWorld を画面なしで最高速で動かし直す
+//   snapshotEvery tick ごとに world を覚えておき（world は値なので、そのまま持てばよい）、
+//   seek ではいちばん近い手前のものから動かす。
+final class Replay(val recording: Recording, val snapshotEvery: Long = 1000) {
+  require(snapshotEvery > 0, "Replay: snapshotEvery must be positive")
+
+  private val events = recording.events
+  val width: Int = recording.params(0)
+  val height: Int = recording.params(1)
+
+  // (tick, 次のイベントの番号, world)。tick の順に並ぶ。
+  private val snapshots = ArrayBuffer[(Long, Int, TetrisWorld)]()
+  snapshots += {
+    val (e, w) = applyEvents(0, 0, TetrisWorld.start(width, height, recording.seed))
+    (0L, e, w)
+  }
+
+  def ticks: Long = recording.ticks
+
+  // tick 回目の tick と、その後のイベントまでを済ませた world
+  def seek(tick: Long): TetrisWorld = {
+    require(0 <= tick && tick <= ticks, "Replay: tick out of range: " + tick)
+    var (t, e, w) = snapshots(lastSnapshotAtOrBefore(tick))
+    while (t < tick) {
+      w = w.tick()
+      t += 1
+      val (e1, w1) = applyEvents(t, e, w)
+      e = e1
+      w = w1
+      if (t % snapshotEvery == 0 && snapshots.last._1 < t) snapshots += ((t, e, w))
+    }
+    w
+  }
+
+  // 最後まで動かした world
+  def result: TetrisWorld = seek(ticks)
+
+  // tick 回目の後に起きたイベントを e 番目から適用する
+  private def applyEvents(tick: Long, e0: Int, w0: TetrisWorld): (Int, TetrisWorld) = {
+    var e = e0
+    var w = w0
+    while (e < events.length && events(e).tick == tick) {
+      w = events(e) match {
+        case Recording.KeyName(_, key) => w.keyEvent(key)
+        case Recording.KeyCode(_, code) => w.pressKey(code)
+        case Recording.Click(_, x, y) => w.click(Pos(x, y))
+      }
+      e += 1
+    }
+    (e, w)
+  }
+
+  private def lastSnapshotAtOrBefore(tick: Long): Int = {
+    var lo = 0
+    var hi = snapshots.length - 1
+    while (lo < hi) {
+      val mid = (lo + hi + 1) / 2
+      if (snapshots(mid)._1 <= tick) lo = mid else hi = mid - 1
+    }
+    lo
+  }
+}
+
+object Replay {
+  def load(file: String, snapshotEvery: Long = 1000): Replay = {
+    val in = new BufferedInputStream(new FileInputStream(file))
+    try new Replay(Recording.read(in), snapshotEvery)
+    finally in.close()
+  }
+}
+
+// Recorder と Replay のテスト（runMain tetris.ReplayTest）
+object ReplayTest extends App {
+  import java.awt.event.KeyEvent
+  import java.io.{ByteArrayInputStream, ByteArrayOutputStream, DataInputStream, DataOutputStream}
+
+  import sdraw.Recorder
+
+  // 可変長の整数とジグザグ符号化
+  println("Recording")
+  val numbers = List(0L, 1L, -1L, 63L, -64L, 64L, 1L << 40, Long.MaxValue, Long.MinValue)
+  println(numbers.forall(n => Recording.unzigzag(Recording.zigzag(n)) == n))
+  println(Recording.zigzag(-1) == 1 && Recording.zigzag(1) == 2)
+  def varBytes(ns: Seq[Long]): Array[Byte] = {
+    val bytes = new ByteArrayOutputStream
+    val out = new DataOutputStream(bytes)
+    ns.foreach(n => Recording.writeVarLong(out, n))
+    out.flush()
+    bytes.toByteArray
+  }
+  val varIn = new DataInputStream(new ByteArrayInputStream(varBytes(numbers.map(Recording.zigzag))))
+  println(numbers.forall(n => Recording.unzigzag(Recording.readVarLong(varIn)) == n) && varIn.available == 0)
+  // 7 ビットずつなので、127 までは 1 バイト、128 は 2 バイト、64 ビットすべては 10 バイト
+  println(varBytes(List(127L)).length == 1 && varBytes(List(128L)).length == 2 && varBytes(List(-1L)).length == 10)
+  println(varBytes(List(Recording.zigzag(-64L))).length == 1 && varBytes(List(Recording.zigzag(64L))).length == 2)
+
+  // 種を決めたゲームを、sdraw.World と同じように入力ごとに記録しながら進める
+  println("Replay")
+  val seed = 42L
+  val bytes = new ByteArrayOutputStream
+  val recorder = new Recorder(bytes, seed, 10, 20)
+  val random = new scala.util.Random(seed)
+  var world = TetrisWorld.start(10, 20, seed)
+  var ticks = 0L
+  var events = 0
+  // tick 回目の tick と、その後の入力までを済ませた world
+  val expected = ArrayBuffer(world)
+  while (ticks < 3000 && !world.gameOver) {
+    random.nextInt(8) match {
+      case 0 =>
+        val key = List("LEFT", "RIGHT", "UP")(random.nextInt(3))
+        recorder.key(key)
+        world = world.keyEvent(key)
+        events += 1
+      case 1 =>
+        val code = List(KeyEvent.VK_LEFT, KeyEvent.VK_RIGHT, KeyEvent.VK_UP, KeyEvent.VK_SPACE)(random.nextInt(4))
+        recorder.keyCode(code)
+        world = world.pressKey(code)
+        events += 1
+      case 2 =>
+        // 負の座標もジグザグ符号化で書ける
+        val (x, y) = (random.nextInt(21) - 10, random.nextInt(21) - 10)
+        recorder.click(x, y)
+        world = world.click(Pos(x, y))
+        events += 1
+      case _ =>
+        recorder.tick()
+        world = world.tick()
+        ticks += 1
+        expected += world
+    }
+    expected(ticks.toInt) = world
+  }
+  recorder.close()
+
+  // 版 2 の見出し
+  val recorded = bytes.toByteArray
+  println(new String(recorded, 0, 4, java.nio.charset.StandardCharsets.UTF_8) == "SDRW" && recorded(4) == 2)
+  val recording = Recording.read(new ByteArrayInputStream(recorded))
+  println(recording.seed == seed && recording.params == Vector(10, 20))
+  println(recording.ticks == ticks && recording.events.length == events)
+
+  // 画面なしで最後まで動かし直すと同じ world になり、覚えた world から seek しても同じになる
+  val replay = new Replay(recording, snapshotEvery = 100)
+  println(replay.result == world)
+  println(List(0L, 1L, 99L, 100L, 101L, 250L, ticks / 2, ticks - 1, ticks).forall(t => replay.seek(t) == expected(t.toInt)))
+  println(new Replay(recording, snapshotEvery = 7).seek(ticks / 3) == expected((ticks / 3).toInt))
+
+  // 版 1 の記録は読まない
+  val version1 = recorded.clone()
+  version1(4) = 1
+  println((try { Recording.read(new ByteArrayInputStream(version1)); false }
+           catch { case _: IllegalArgumentException => true }) == true)
+
+  // 途中で切れた記録は、読めたところまでを返す
+  val truncated = Recording.read(new ByteArrayInputStream(recorded.take(recorded.length / 2)))
+  println(truncated.events == recording.events.take(truncated.events.length) && truncated.ticks <= ticks)
+}
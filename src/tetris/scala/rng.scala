@@ -0,0 +1,40 @@
+package tetris
+
+// 種から決まる乱数（SplitMix64）
+//   値として TetrisWorld に持たせるので、ゲームごとに独立していて、スレッド間で共有されない。
+//   同じ種からは同じ列が出るので、ゲームを再現できる。
+final case class Rng(seed: Long) {
+  import Rng._
+
+  def nextLong: (Long, Rng) = {
+    val s = seed + Gamma
+    (mix64(s), Rng(s))
+  }
+
+  // 0 以上 n 未満
+  def nextInt(n: Int): (Int, Rng) = {
+    require(n > 0, "Rng: bound must be positive")
+    val (x, next) = nextLong
+    (((x >>> 33) % n).toInt, next)
+  }
+
+  // 互いに独立した 2 つの列に分ける
+  def split: (Rng, Rng) = {
+    val (x, next) = nextLong
+    (next, Rng(mix64(x)))
+  }
+}
+
+object Rng {
+  private val Gamma = 0x9e3779b97f4a7c15L
+
+  def mix64(z0: Long): Long = {
+    var z = z0
+    z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L
+    z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL
+    z ^ (z >>> 31)
+  }
+
+  // 種 seed の列の i 番目から作った乱数（多数のゲームに独立な種を配るときに使う）
+  def stream(seed: Long, i: Long): Rng = Rng(mix64(seed + i * Gamma))
+}
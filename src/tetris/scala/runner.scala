@@ -0,0 +1,114 @@
+/*
+プログラムの実行手順：
+1. sbt で project tetris を選ぶ
+2. runMain tetris.Tournament 100000 42 と入力する
+   引数：ゲームの数、乱数の種、1 ゲームあたりの tick の上限、
+         すべての局面を書き出すファイル（省略可。.gz で終わる名前なら圧縮する）
+*/
+
+package tetris
+
+import java.util.concurrent.{ForkJoinPool, RecursiveAction}
+import java.util.concurrent.atomic.{LongAccumulator, LongAdder}
+
+import scala.util.Random
+
+// 独立したゲームを多数、全コアで並列に動かす
+object Runner {
+  // 全ゲームの集計。各スレッドからロックなしで足し込む。
+  final class Totals {
+    val games = new LongAdder
+    val ticks = new LongAdder
+    val pieces = new LongAdder
+    val lines = new LongAdder
+    val gameOvers = new LongAdder
+    val gameOverTicks = new LongAdder
+    val longestGame = new LongAccumulator((a: Long, b: Long) => math.max(a, b), 0L)
+
+    def add(r: Simulator.Result): Unit = {
+      games.increment()
+      ticks.add(r.ticks)
+      pieces.add(r.pieces)
+      lines.add(r.lines)
+      if (r.world.gameOver) {
+        gameOvers.increment()
+        gameOverTicks.add(r.ticks)
+      }
+      longestGame.accumulate(r.ticks)
+    }
+
+    override def toString: String = {
+      val n = math.max(1L, games.sum)
+      "games: " + games.sum + ", ticks: " + ticks.sum +
+      ", pieces: " + pieces.sum + ", lines: " + lines.sum +
+      ", gameOvers: " + gameOvers.sum + ", longest: " + longestGame.get +
+      f", lines/game: ${lines.sum.toDouble / n}%.2f" +
+      f", pieces/game: ${pieces.sum.toDouble / n}%.2f"
+    }
+  }
+
+  // 1 ゲーム。テトロミノも入力も、種 seed の i 番目の列だけから決まる。
+  def play(seed: Long, i: Long, width: Int, height: Int, maxTicks: Long,
+           samples: Option[Exporter.Sink] = None): Simulator.Result = {
+    val rng = Rng.stream(seed, i)
+    val (pieceRng, inputRng) = rng.split
+    val inputs = Simulator.randomInputs(new Random(inputRng.seed))
+    Simulator.run(TetrisWorld.initial(width, height, pieceRng), inputs, maxTicks, samples)
+  }
+
+  // これ以下の数のゲームは分けずに 1 スレッドで動かす
+  val Threshold = 64
+
+  private final class Games(seed: Long, from: Long, until: Long,
+                            width: Int, height: Int, maxTicks: Long,
+                            totals: Totals, exporter: Option[Exporter]) extends RecursiveAction {
+    def compute(): Unit = {
+      if (until - from <= Threshold) {
+        val samples = exporter.map(_.sink())
+        var i = from
+        while (i < until) {
+          totals.add(play(seed, i, width, height, maxTicks, samples))
+          i += 1
+        }
+        samples.foreach(_.flush())
+      } else {
+        val mid = from + (until - from) / 2
+        RecursiveAction.invokeAll(
+          new Games(seed, from, mid, width, height, maxTicks, totals, exporter),
+          new Games(seed, mid, until, width, height, maxTicks, totals, exporter))
+      }
+    }
+  }
+
+  // n ゲームを pool で動かして集計する
+  //   exporter を与えると、すべての局面を書き出す（閉じるのは呼んだ側）
+  def runAll(n: Long, seed: Long, width: Int, height: Int, maxTicks: Long,
+             pool: ForkJoinPool = ForkJoinPool.commonPool(),
+             exporter: Option[Exporter] = None): Totals = {
+    val totals = new Totals
+    pool.invoke(new Games(seed, 0, n, width, height, maxTicks, totals, exporter))
+    totals
+  }
+}
+
+// 多数のゲームを並列に動かして結果を表示する
+object Tournament extends App {
+  val WellWidth = 10
+  val WellHeight = 20
+
+  val games = if (args.length > 0) args(0).toLong else 10000L
+  val seed = if (args.length > 1) args(1).toLong else System.nanoTime()
+  val maxTicks = if (args.length > 2) args(2).toLong else 100000L
+  val exporter = if (args.length > 3) {
+    Some(new Exporter(new java.io.FileOutputStream(args(3)), gzip = args(3).endsWith(".gz")))
+  } else None
+
+  val start = System.nanoTime()
+  val totals = Runner.runAll(games, seed, WellWidth, WellHeight, maxTicks, exporter = exporter)
+  val seconds = (System.nanoTime() - start) / 1e9
+  exporter.foreach(_.close())
+  println("seed: " + seed)
+  println(totals)
+  exporter.foreach(e => println("samples: " + e.written.sum + ", dropped: " + e.dropped.sum))
+  println(f"${totals.ticks.sum / seconds}%.0f ticks/s on ${Runtime.getRuntime.availableProcessors} cores")
+}
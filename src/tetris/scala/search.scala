@@ -0,0 +1,286 @@
+/*
+プログラムの実行手順：
+1. sbt で project tetris を選ぶ
+2. runMain tetris.Bot 1000 42 2 と入力する
+   引数：置く piece の数、乱数の種、先読みする piece の数、
+         並列に読むときは分ける段数（省略すると 1 スレッドで読む）
+*/
+
+package tetris
+
+import scala.collection.mutable.ArrayBuffer
+
+import tetris.{ShapeLib => S}
+
+// ボットのための置き場所の探索
+//   今の piece を操作（左右・回転・1 段落とす）して届く置き場所を幅優先ですべて数え上げ、
+//   置いて揃った行を消した後の井戸を評価関数で採点する。次に来る piece の列（queue）も先読みできる。
+//   井戸は Board（ビットボード）のまま扱い、同じ井戸・同じ残りの piece の列に出会ったら、
+//   置換表（Zobrist ハッシュで引く）に覚えた評価を使う。表は探索をまたいで使い回す。
+object Search {
+  // piece の最後の置き場所：向きと、外接矩形の左上の位置
+  final case class Placement(kind: Int, rotation: Int, x: Int, y: Int) {
+    def orientation: Orientations.Orientation = Orientations(kind, rotation)
+    def shape: S.Shape = orientation.shape
+  }
+
+  // 探索の結果：最初に置く場所と、先読みした先の評価
+  final case class Choice(placement: Placement, score: Double)
+
+  // 置いた後の井戸の評価。大きいほどよい。lines はその piece で消した行の数。
+  trait Evaluator {
+    def apply(board: Board, lines: Int): Double
+  }
+
+  // 高さの合計・消した行・穴・隣の列との高さの差の重みつきの和
+  final case class Weights(aggregateHeight: Double = -0.510066,
+                           completeLines: Double = 0.760666,
+                           holes: Double = -0.35663,
+                           bumpiness: Double = -0.184483) extends Evaluator {
+    def apply(board: Board, lines: Int): Double = {
+      var total = 0
+      var bump = 0
+      var j = 0
+      while (j < board.width) {
+        val h = board.columnHeight(j)
+        total += h
+        if (j > 0) bump += math.abs(h - board.columnHeight(j - 1))
+        j += 1
+      }
+      aggregateHeight * total + completeLines * lines + holes * board.holeCount + bumpiness * bump
+    }
+  }
+
+  val DefaultEvaluator: Evaluator = Weights()
+
+  // piece を board の (x, y) に置いて揃った行を消した井戸と、消した行の数
+  def place(board: Board, p: Placement): (Board, Int) = {
+    val combined = board.combineAt(p.orientation.packed, p.x, p.y)
+    (combined.eraseFullRows, combined.fullRowCount)
+  }
+
+  // world の piece を p に置いた次の world（p は届く置き場所であること）
+  def play(world: TetrisWorld, p: Placement): TetrisWorld = world.lock(p.x, p.y, p.shape)
+
+  // 同じ形の向きのうち、番号のいちばん小さいもの（O の 4 つの向きは同じ置き場所になる）
+  private val canonical: Array[Array[Int]] =
+    Array.tabulate(Orientations.table.length, Orientations.Rotations) { (kind, r) =>
+      (0 to r).find(r0 => Orientations(kind, r0).shape == Orientations(kind, r).shape).get
+    }
+
+  // 届く置き場所の列挙（幅 width・高さ height の井戸用）
+  //   状態 (向き, x, y) の訪問済みの印は、呼ぶたびに番号を変えて使い回すので、配列を消さずに済む。
+  //   ひとつのスレッドで使うこと。
+  final class MoveGen(val width: Int, val height: Int) {
+    private val states = Orientations.Rotations * width * height
+    private val visited = new Array[Int](states)
+    private val landed = new Array[Int](states)
+    private val queue = new Array[Int](states)
+    private var stamp = 0
+    private var tail = 0
+
+    private def index(r: Int, x: Int, y: Int): Int = (r * width + x) * height + y
+
+    // 置ける状態で、まだ訪れていなければ列に加える
+    private def visit(board: Board, kind: Int, r: Int, x: Int, y: Int): Unit =
+      if (0 <= x && x < width && 0 <= y && y < height) {
+        val i = index(r, x, y)
+        if (visited(i) != stamp && !board.collidesAt(Orientations(kind, r).packed, x, y)) {
+          visited(i) = stamp
+          queue(tail) = i
+          tail += 1
+        }
+      }
+
+    // kind 番目の piece を向き rotation・位置 (x, y) から動かして届く置き場所（置けなければ空）
+    def placements(board: Board, kind: Int, rotation: Int, x: Int, y: Int): IndexedSeq[Placement] = {
+      require(board.width == width && board.height == height, "MoveGen: board size mismatch")
+      val result = ArrayBuffer[Placement]()
+      stamp += 1
+      if (stamp == 0) {
+        java.util.Arrays.fill(visited, 0)
+        java.util.Arrays.fill(landed, 0)
+        stamp = 1
+      }
+      tail = 0
+      visit(board, kind, rotation & (Orientations.Rotations - 1), x, y)
+      var head = 0
+      while (head < tail) {
+        val i = queue(head)
+        head += 1
+        val py = i % height
+        val px = (i / height) % width
+        val r = i / height / width
+        visit(board, kind, r, px - 1, py)
+        visit(board, kind, r, px + 1, py)
+        visit(board, kind, (r + 1) & (Orientations.Rotations - 1), px, py)
+        // 1 段落とせなければ、そこが置き場所
+        if (board.collidesAt(Orientations(kind, r).packed, px, py + 1)) {
+          val c = index(canonical(kind)(r), px, py)
+          if (landed(c) != stamp) {
+            landed(c) = stamp
+            result += Placement(kind, r, px, py)
+          }
+        } else visit(board, kind, r, px, py + 1)
+      }
+      result
+    }
+  }
+
+  // 先読みつきの探索。ひとつのスレッドで使うこと。
+  final class Searcher(val width: Int, val height: Int, val evaluator: Evaluator = DefaultEvaluator,
+                       val table: TranspositionTable = new TranspositionTable()) {
+    val moves = new MoveGen(width, height)
+
+    // 評価した井戸の数（探索の速さを見るため）
+    var positions = 0L
+
+    // kind 番目の piece（向き rotation・位置 (x, y)）を置き、続けて queue の piece を置くときの最善の手
+    //   読むのは今の piece を含めて depth 個まで。置けなければ None。
+    def best(board: Board, kind: Int, rotation: Int, x: Int, y: Int,
+             queue: IndexedSeq[Int], depth: Int): Option[Choice] = {
+      table.newSearch()
+      var choice: Choice = null
+      moves.placements(board, kind, rotation, x, y).foreach { p =>
+        val (next, lines) = place(board, p)
+        val score =
+          if (depth <= 1 || queue.isEmpty) evaluate(next, lines)
+          else value(next, queue, 0, depth - 1)
+        if (choice == null || score > choice.score) choice = Choice(p, score)
+      }
+      Option(choice)
+    }
+
+    // world の今の piece から
+    def best(world: TetrisWorld, queue: IndexedSeq[Int], depth: Int): Option[Choice] =
+      Orientations.of(world.piece._2).flatMap { o =>
+        best(world.board, o.kind, o.rotation, world.piece._1._1, world.piece._1._2, queue, depth)
+      }
+
+    def evaluate(board: Board, lines: Int): Double = {
+      positions += 1
+      evaluator(board, lines)
+    }
+
+    // queue の index 番目から depth 個を、出てくる位置から置いていったときの最善の評価
+    //   途中で消した行は、低くなった井戸として最後の評価に表れる。置けなければ負の無限大。
+    def value(board: Board, queue: IndexedSeq[Int], index: Int, depth: Int): Double = {
+      val key = board.zobrist ^ Zobrist.queue(queue, index, depth)
+      val known = table.get(key)
+      if (!known.isNaN) return known
+      var v = Double.NegativeInfinity
+      moves.placements(board, queue(index), 0, TetrisWorld.spawnX(width), 0).foreach { p =>
+        val (next, lines) = place(board, p)
+        val score =
+          if (depth <= 1 || index + 1 >= queue.length) evaluate(next, lines)
+          else value(next, queue, index + 1, depth - 1)
+        if (score > v) v = score
+      }
+      table.put(key, depth, v)
+      v
+    }
+  }
+
+  // world の次から n 個（先読みできる数まで）の piece の種類
+  def preview(world: TetrisWorld, n: Int): IndexedSeq[Int] =
+    IndexedSeq.tabulate(math.min(n, world.pieces.size))(world.pieces.peek)
+}
+
+// 探索で置き場所を選んで遊ぶボット。消した行の数と探索の速さを表示する。
+object Bot extends App {
+  val WellWidth = 10
+  val WellHeight = 20
+
+  val pieces = if (args.length > 0) args(0).toInt else 1000
+  val seed = if (args.length > 1) args(1).toLong else System.nanoTime()
+  val depth = if (args.length > 2) args(2).toInt else 2
+  val splitDepth = if (args.length > 3) Some(args(3).toInt) else None
+
+  val searcher = new Search.Searcher(WellWidth, WellHeight)
+  val parallel = splitDepth.map(d => new ParallelSearch(WellWidth, WellHeight, splitDepth = d))
+  var world = TetrisWorld.initial(WellWidth, WellHeight, Rng(seed))
+  var placed = 0
+  var lines = 0L
+  var stuck = false
+  val start = System.nanoTime()
+  while (placed < pieces && !world.gameOver && !stuck) {
+    val queue = Search.preview(world, depth - 1)
+    parallel.fold(searcher.best(world, queue, depth))(_.best(world, queue, depth)) match {
+      case Some(choice) =>
+        val (_, cleared) = Search.place(world.board, choice.placement)
+        world = Search.play(world, choice.placement)
+        lines += cleared
+        placed += 1
+      case None =>
+        stuck = true
+    }
+  }
+  val nanos = System.nanoTime() - start
+  val positions = parallel.fold(searcher.positions)(_.positions)
+  println("pieces: " + placed + ", lines: " + lines + ", gameOver: " + world.gameOver +
+          ", positions: " + positions + f", ${positions * 1e9 / nanos}%.0f positions/s")
+}
+
+// Search のテスト（runMain tetris.SearchTest）
+object SearchTest extends App {
+  import ShapeLib._
+
+  // 置き場所が、置けて、1 段落とせないところであること
+  def resting(board: Board, p: Search.Placement): Boolean =
+    !board.collidesAt(p.orientation.packed, p.x, p.y) && board.collidesAt(p.orientation.packed, p.x, p.y + 1)
+
+  // 届く置き場所の列挙
+  println("MoveGen")
+  val empty = Board.empty(10, 20)
+  val moves = new Search.MoveGen(10, 20)
+  // I は縦 10 通り・横 7 通り、T は 4 つの向きで 8 + 9 + 8 + 9 通り
+  println(moves.placements(empty, 0, 0, TetrisWorld.spawnX(10), 0).length == 17)
+  println(moves.placements(empty, 2, 0, TetrisWorld.spawnX(10), 0).length == 34)
+  // O の 4 つの向きは同じ置き場所なので、1 つにまとめる
+  println(moves.placements(empty, 3, 0, TetrisWorld.spawnX(10), 0).map(p => (p.x, p.y)).sorted ==
+          (0 to 8).map(x => (x, 18)))
+  println(moves.placements(empty, 4, 0, TetrisWorld.spawnX(10), 0).forall(p => resting(empty, p)))
+  // 張り出しの下へは、落としてから横に滑らせないと入れない（真上から落とすと張り出しの上に止まる）
+  val overhang = Board.fromShape(make(List("      ", "      ", "II    ", "      ")))
+  val tucks = new Search.MoveGen(6, 4).placements(overhang, 0, 0, 2, 0)
+  println(tucks.exists(p => p.orientation.width == 4 && p.x == 0 && p.y == 3))
+  println(tucks.exists(p => p.orientation.width == 4 && p.x == 0 && p.y == 1))
+  println(tucks.forall(p => resting(overhang, p)))
+  println(tucks.distinct.length == tucks.length)
+  // 置けないところから始めれば、置き場所はない
+  println(new Search.MoveGen(6, 4).placements(overhang, 0, 0, 0, 0).isEmpty)
+
+  // 先読みの評価：置き場所と次の piece を総当たりした最善と同じ
+  println("Searcher")
+  val brute = new Search.MoveGen(10, 20)
+  def bruteForce(board: Board, kinds: List[Int]): Double = kinds match {
+    case Nil => Double.NegativeInfinity
+    case kind :: rest =>
+      brute.placements(board, kind, 0, TetrisWorld.spawnX(10), 0).map { p =>
+        val (next, lines) = Search.place(board, p)
+        if (rest.isEmpty) Search.DefaultEvaluator(next, lines) else bruteForce(next, rest)
+      }.foldLeft(Double.NegativeInfinity)(math.max)
+  }
+  val searcher = new Search.Searcher(10, 20)
+  for (seed <- List(1L, 42L, 2024L)) {
+    val world = Iterator.iterate(TetrisWorld.start(10, 20, seed))(_.hardDrop).drop(3).next()
+    val kind = Orientations.of(world.piece._2).get.kind
+    val queue = Search.preview(world, 2)
+    for (depth <- 1 to 3) {
+      val choice = searcher.best(world, queue, depth).get
+      println(choice.score == bruteForce(world.board, (kind :: queue.toList).take(depth)))
+      // 選んだ置き場所に置いてから読み直しても、同じ評価になる
+      val (next, lines) = Search.place(world.board, choice.placement)
+      println(choice.score == (if (depth == 1) Search.DefaultEvaluator(next, lines)
+                               else bruteForce(next, queue.toList.take(depth - 1))))
+    }
+  }
+  // 表は探索をまたいで使い回すので、同じ局面を読み直すと表から引ける
+  val again = new Search.Searcher(10, 20)
+  val againWorld = TetrisWorld.start(10, 20, 42)
+  val first = again.best(againWorld, Search.preview(againWorld, 2), 3)
+  val hitsBefore = again.table.hits
+  val positionsBefore = again.positions
+  println(again.best(againWorld, Search.preview(againWorld, 2), 3) == first)
+  println(again.table.hits > hitsBefore && again.positions - positionsBefore < positionsBefore)
+}
@@ -33,6 +33,29 @@ object ShapeLib {
   val Sym2Color: List[(ColorSymbol, Color)] =
     Color2Sym.map(cn => (cn._2, cn._1))
 
+  // 色から記号を引く表。表にある色はまず参照で探し、見つからなければ値で探す。
+  //   同じ色が何度も出てくるときは、最初のものを使う（Color2Sym.find と同じ）。
+  private val symByIdentity: java.util.IdentityHashMap[Color, Character] = {
+    val m = new java.util.IdentityHashMap[Color, Character]()
+    Color2Sym.reverse.foreach { case (c, sym) => m.put(c, sym) }
+    m
+  }
+
+  private val symByValue: Map[Color, ColorSymbol] = Color2Sym.reverse.toMap
+
+  // 記号から色を引く表（文字コードで引く）。表にない記号は Transparent。
+  private val colorBySym: Array[Color] = {
+    val a = Array.fill[Color](128)(Transparent)
+    Sym2Color.reverse.foreach { case (sym, c) => if (sym < a.length) a(sym) = c }
+    a
+  }
+
+  def colorOf(sym: ColorSymbol): Color =
+    if (sym < colorBySym.length) colorBySym(sym) else Transparent
+
+  // showShape が書き込む StringBuilder（スレッドごとに使い回す）
+  private val builder = ThreadLocal.withInitial[java.lang.StringBuilder](() => new java.lang.StringBuilder)
+
   // テトロミノの表現
   type Block = Color
   type Row = List[Block]
@@ -42,15 +65,38 @@ object ShapeLib {
   // テトロミノの表示（テスト用）
   def show(shape: Shape): Unit = println(showShape(shape))
 
-  def showShape(shape: Shape): String = shape.map(showRow).mkString("\n")
+  //   行ごとに文字列を作らず、使い回しの StringBuilder に 1 文字ずつ書く
+  def showShape(shape: Shape): String = {
+    val sb = builder.get
+    sb.setLength(0)
+    var rows = shape
+    while (rows.nonEmpty) {
+      if (rows ne shape) sb.append('\n')
+      appendRow(sb, rows.head)
+      rows = rows.tail
+    }
+    sb.toString
+  }
+
+  def showRow(row: Row): String = {
+    val sb = builder.get
+    sb.setLength(0)
+    appendRow(sb, row)
+    sb.toString
+  }
 
-  def showRow(row: Row): String = row.map(showBlock).mkString
+  private def appendRow(sb: java.lang.StringBuilder, row: Row): Unit = {
+    var blocks = row
+    while (blocks.nonEmpty) {
+      sb.append(showBlock(blocks.head))
+      blocks = blocks.tail
+    }
+  }
 
   def showBlock(block: Block): Char = {
-    Color2Sym.find(_._1 == block) match {
-      case Some((_, sym)) => sym
-      case None => '.'
-    }
+    val sym = symByIdentity.get(block)
+    if (sym != null) sym
+    else symByValue.getOrElse(block, '.')
   }
 
   // テトロミノの定義
@@ -64,16 +110,8 @@ object ShapeLib {
       List("L ", "L ", "LL"),
       List(" SS", "SS "))
 
-  def make(spec: ShapeSpec): Shape = {
-
-    def color(c: ColorSymbol): Color =
-      Sym2Color.find(p => p._1.equals(c)) match {
-        case Some((_, c)) => c
-        case _ => Transparent
-      }
-
-    spec.map((row: String) => row.toList.map(color))
-  }
+  def make(spec: ShapeSpec): Shape =
+    spec.map((row: String) => List.tabulate(row.length)(j => colorOf(row.charAt(j))))
 
   // 7種類のテトロミノが入ったリスト
   val allShapes: List[Shape] = shapeSpecs.map(make)
@@ -82,7 +120,10 @@ object ShapeLib {
   // 次のテトロミノの選択
   val r = new Random()
 
-  def random(): Shape = allShapes(r.nextInt(allShapes.length))
+  def random(): Shape = random(r)
+
+  // 乱数を与えて選ぶ（ゲームを再現するとき）
+  def random(r: Random): Shape = allShapes(r.nextInt(allShapes.length))
 
   // 1. duplicate
   // 目的：
@@ -0,0 +1,110 @@
+/*
+プログラムの実行手順：
+1. sbt で project tetris を選び、run と入力する
+2. tetris.Simulate を選択する（引数を与えるときは runMain tetris.Simulate 1000000 42）
+   引数：tick の回数、乱数の種、入力スクリプトのファイル（省略可）
+*/
+
+package tetris
+
+import scala.io.Source
+import scala.util.Random
+
+// 画面・タイマーを使わずに TetrisWorld を動かす
+object Simulator {
+  // 入力：tick か、キー入力
+  sealed trait Input
+  case object Tick extends Input
+  final case class Key(key: String) extends Input
+
+  // pieces は積んだテトロミノの数、lines は消した行の数
+  final case class Result(world: TetrisWorld, ticks: Long, keys: Long,
+                          pieces: Long, lines: Long, nanos: Long) {
+    def ticksPerSecond: Double = if (nanos == 0) 0 else ticks * 1e9 / nanos
+
+    override def toString: String =
+      "ticks: " + ticks + ", keys: " + keys + ", pieces: " + pieces + ", lines: " + lines +
+      ", gameOver: " + world.gameOver + f", $ticksPerSecond%.0f ticks/s"
+  }
+
+  // inputs を尽きるまで（またはゲームオーバーか maxTicks まで）できるだけ速く与える
+  //   samples を与えると、入力ごとに (前の world, 入力, 結果) をそこに書き出す（ファイルへの書き込みは待たない）
+  def run(world: TetrisWorld, inputs: Iterator[Input], maxTicks: Long = Long.MaxValue,
+          samples: Option[Exporter.Sink] = None): Result = {
+    var w = world
+    var ticks = 0L
+    var keys = 0L
+    var pieces = 0L
+    var lines = 0L
+    val start = System.nanoTime()
+    while (ticks < maxTicks && !w.gameOver && inputs.hasNext) {
+      val input = inputs.next()
+      val next = input match {
+        case Tick =>
+          ticks += 1
+          w.tick()
+        case Key(k) =>
+          keys += 1
+          w.keyEvent(k)
+      }
+      // pile が変わったのは piece を積んだとき（tick か、ハードドロップ）
+      var cleared = 0
+      if (next.board ne w.board) {
+        val before = w.board.blockCount + Orientations.packed(w.piece._2).blockCount
+        pieces += 1
+        cleared = (before - next.board.blockCount) / w.board.width
+        lines += cleared
+      }
+      samples.foreach(_.add(w, input, next, cleared))
+      w = next
+    }
+    Result(w, ticks, keys, pieces, lines, System.nanoTime() - start)
+  }
+
+  // スクリプトの読み込み：1 行に 1 つ、"tick" または キーの名前（"LEFT" など）
+  def parse(lines: Iterator[String]): Iterator[Input] =
+    lines.map(_.trim).filter(l => l.nonEmpty && !l.startsWith("#")).map {
+      case "tick" => Tick
+      case key => Key(key)
+    }
+
+  // 乱数で作る入力：tick の間に平均 keysPerTick 回のキー入力をはさむ
+  val playKeys: Vector[Input] = Vector("LEFT", "RIGHT", "UP").map(Key)
+
+  def randomInputs(r: Random, keysPerTick: Double = 1.0): Iterator[Input] = {
+    val p = keysPerTick / (1 + keysPerTick)
+    Iterator.continually(if (r.nextDouble() < p) playKeys(r.nextInt(playKeys.length)) else Tick)
+  }
+}
+
+// 一定回数の tick を流して速さを表示する
+object Simulate extends App {
+  val WellWidth = 10
+  val WellHeight = 20
+
+  val ticks = if (args.length > 0) args(0).toLong else 1000000L
+  val seed = if (args.length > 1) args(1).toLong else System.nanoTime()
+  val r = new Random(seed)
+
+  if (args.length > 2) {
+    // スクリプトを 1 回だけ流す
+    val source = Source.fromFile(args(2))
+    try {
+      println(Simulator.run(TetrisWorld.initial(WellWidth, WellHeight, Rng(seed)),
+                            Simulator.parse(source.getLines()), ticks))
+    } finally source.close()
+  } else {
+    // ゲームオーバーになったら新しいゲームを始める
+    var done = 0L
+    var games = 0
+    val start = System.nanoTime()
+    while (done < ticks) {
+      val result = Simulator.run(TetrisWorld.initial(WellWidth, WellHeight, Rng.stream(seed, games)),
+                                 Simulator.randomInputs(r), ticks - done)
+      done += result.ticks
+      games += 1
+    }
+    val nanos = System.nanoTime() - start
+    println("games: " + games + ", ticks: " + done + f", ${done * 1e9 / nanos}%.0f ticks/s")
+  }
+}
@@ -0,0 +1,302 @@
+package tetris
+
+import java.nio.{ByteBuffer, MappedByteBuffer}
+import java.nio.channels.FileChannel
+import java.nio.charset.StandardCharsets.US_ASCII
+import java.nio.file.{Path, StandardOpenOption}
+
+// TetrisWorld のバイナリ形式（1 局面）
+//   "TWSN"、版（1 バイト）、幅（1 バイト）、高さ（2 バイト）、
+//   piece の種類・向き（1 バイトずつ）と位置 x, y（4 バイトずつ）、
+//   次のテトロミノの列：queue（8 バイト）・先読みの数・bag（1 バイトずつ）・乱数の種（8 バイト）、
+//   pile のブロックの有無：上の行から 1 マス 1 ビットで詰めた Long の列、
+//   色：ブロックのあるマスだけ、同じ順に Board.palette の番号を 1 バイトずつ。
+//   ByteBuffer に直接読み書きし、途中で配列やリストを作らない。
+object Snapshot {
+  private val Magic = "TWSN".getBytes(US_ASCII)
+  val Version = 1
+
+  private val HeaderSize = 4 + 1 + 1 + 2 + 1 + 1 + 4 + 4 + 8 + 1 + 1 + 8
+
+  private def words(width: Int, height: Int): Int = ((width.toLong * height + 63) / 64).toInt
+
+  // world を書くのに要るバイト数
+  def size(world: TetrisWorld): Int =
+    HeaderSize + 8 * words(world.board.width, world.board.height) + world.board.blockCount
+
+  // buf の今の位置に world を書き、位置を進める
+  def write(world: TetrisWorld, buf: ByteBuffer): Unit = {
+    val board = world.board
+    val o = Orientations.of(world.piece._2).getOrElse(
+      throw new IllegalArgumentException("Snapshot: piece is not a tetromino"))
+    require(board.height <= 0xffff, "Snapshot: well too high: " + board.height)
+    buf.put(Magic)
+    buf.put(Version.toByte)
+    buf.put(board.width.toByte)
+    buf.putShort(board.height.toShort)
+    buf.put(o.kind.toByte)
+    buf.put(o.rotation.toByte)
+    buf.putInt(world.piece._1._1)
+    buf.putInt(world.piece._1._2)
+    buf.putLong(world.pieces.queue)
+    buf.put(world.pieces.size.toByte)
+    buf.put(world.pieces.bag.toByte)
+    buf.putLong(world.pieces.rng.seed)
+
+    // ブロックの有無：行のビット列を続けて詰める
+    val width = board.width
+    var acc = 0L
+    var bits = 0
+    var i = 0
+    while (i < board.height && width > 0) {
+      val m = board.rowMask(i)
+      acc |= m << bits
+      if (bits + width >= 64) {
+        buf.putLong(acc)
+        acc = if (bits == 0) 0L else m >>> (64 - bits)
+        bits = bits + width - 64
+      } else bits += width
+      i += 1
+    }
+    if (bits > 0) buf.putLong(acc)
+
+    // 色
+    i = 0
+    while (i < board.height) {
+      var rest = board.rowMask(i)
+      while (rest != 0) {
+        buf.put(board.colorIndex(i, java.lang.Long.numberOfTrailingZeros(rest)).toByte)
+        rest &= rest - 1
+      }
+      i += 1
+    }
+  }
+
+  // buf の今の位置から world を読み、位置を進める
+  def read(buf: ByteBuffer): TetrisWorld = {
+    val magic = new Array[Byte](Magic.length)
+    buf.get(magic)
+    if (!java.util.Arrays.equals(magic, Magic))
+      throw new IllegalArgumentException("Snapshot: not a snapshot")
+    val version = buf.get() & 0xff
+    if (version != Version)
+      throw new IllegalArgumentException("Snapshot: unsupported version " + version)
+    val width = buf.get() & 0xff
+    val height = buf.getShort() & 0xffff
+    val kind = buf.get().toInt
+    val rotation = buf.get().toInt
+    val x = buf.getInt()
+    val y = buf.getInt()
+    val queue = buf.getLong()
+    val size = buf.get() & 0xff
+    val bag = buf.get() & 0xff
+    val seed = buf.getLong()
+
+    // ブロックの有無は位置を指定して読み、色は続けて読む
+    val base = buf.position()
+    buf.position(base + 8 * words(width, height))
+    val full = Board.maskOf(width)
+    val rows = Vector.tabulate(height) { i =>
+      val p = i.toLong * width
+      val w = (p >>> 6).toInt
+      val off = (p & 63).toInt
+      var m = if (width == 0) 0L else buf.getLong(base + 8 * w) >>> off
+      if (off + width > 64) m |= buf.getLong(base + 8 * (w + 1)) << (64 - off)
+      m &= full
+      if (m == 0) Board.Row.empty(width)
+      else {
+        val cells = new Array[Byte](width)
+        var rest = m
+        while (rest != 0) {
+          cells(java.lang.Long.numberOfTrailingZeros(rest)) = buf.get()
+          rest &= rest - 1
+        }
+        new Board.Row(m, cells)
+      }
+    }
+    TetrisWorld(((x, y), Orientations(kind, rotation).shape), Board.fromRows(width, rows),
+                Pieces(queue, size, bag, Rng(seed)))
+  }
+
+  def encode(world: TetrisWorld): Array[Byte] = {
+    val buf = ByteBuffer.allocate(size(world))
+    write(world, buf)
+    buf.array
+  }
+
+  def decode(bytes: Array[Byte]): TetrisWorld = read(ByteBuffer.wrap(bytes))
+}
+
+// 局面を追記していくファイル（学習用のデータなど、大量の局面を書き出すとき）
+//   "TWSF"、版（1 バイト）、予備（3 バイト）に続けて、(長さ（4 バイト）, Snapshot) を並べる。
+//   ファイルは chunkSize ずつメモリに写して書くので、1 局面ごとの書き込みの呼び出しはない。
+//   局面が今の範囲に収まらなければ、書き終わった位置から次の範囲を写す。
+//   長さ 0 はそこで終わりの印（閉じずに終わったファイルは、写した範囲の残りが 0 で埋まっている）。
+//   局面を先に書き、長さは最後に書く（途中で止まっても、書きかけの局面は終わりの後ろに残るだけ）。
+//   close で写した範囲をディスクに書き出し、書き終わった位置までに切り詰める。
+//   写した範囲が手放されていないと切り詰められない OS（Windows）では、終わりに長さ 0 を書いて残す。
+final class SnapshotFile private (channel: FileChannel, chunkSize: Int, private var end: Long)
+    extends java.io.Closeable {
+  private var region: MappedByteBuffer = null
+  private var regionStart = 0L
+
+  // 書いた局面の数（このファイルを開いてから）
+  var count = 0L
+
+  def append(world: TetrisWorld): Unit = synchronized {
+    val n = Snapshot.size(world)
+    val need = 4 + n
+    if (region == null || end + need > regionStart + region.capacity) {
+      // 前の範囲は書き出してから手放す
+      if (region != null) region.force()
+      regionStart = end
+      region = channel.map(FileChannel.MapMode.READ_WRITE, end, math.max(chunkSize, need).toLong)
+    }
+    region.position((end - regionStart).toInt + 4)
+    Snapshot.write(world, region)
+    region.putInt((end - regionStart).toInt, n)
+    end += need
+    count += 1
+  }
+
+  def close(): Unit = synchronized {
+    if (channel.isOpen) {
+      if (region != null) {
+        if (end + 4 <= regionStart + region.capacity) region.putInt((end - regionStart).toInt, 0)
+        region.force()
+      }
+      region = null
+      try channel.truncate(end)
+      catch { case _: java.io.IOException => () } // 残りは 0 で埋まっていて、長さ 0 の印もある
+      channel.close()
+    }
+  }
+}
+
+object SnapshotFile {
+  private val Magic = "TWSF".getBytes(US_ASCII)
+  val Version = 1
+  private val HeaderSize = 8
+
+  val DefaultChunkSize: Int = 1 << 26
+
+  // path を開く。なければ作り、あれば最後の局面の後ろから書き足す。
+  def open(path: Path, chunkSize: Int = DefaultChunkSize): SnapshotFile = {
+    val channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)
+    try {
+      if (channel.size == 0) {
+        val header = ByteBuffer.allocate(HeaderSize)
+        header.put(Magic).put(Version.toByte)
+        header.rewind()
+        channel.write(header, 0)
+        new SnapshotFile(channel, chunkSize, HeaderSize)
+      } else {
+        checkHeader(channel)
+        // 長さをたどって、終わりの位置を探す
+        val len = ByteBuffer.allocate(4)
+        var pos = HeaderSize.toLong
+        var done = false
+        while (!done) {
+          len.clear()
+          if (pos + 4 > channel.size || channel.read(len, pos) < 4) done = true
+          else {
+            val n = len.getInt(0)
+            if (n <= 0 || pos + 4 + n > channel.size) done = true
+            else pos += 4 + n
+          }
+        }
+        new SnapshotFile(channel, chunkSize, pos)
+      }
+    } catch {
+      case e: Throwable =>
+        channel.close()
+        throw e
+    }
+  }
+
+  private def checkHeader(channel: FileChannel): Unit = {
+    val header = ByteBuffer.allocate(HeaderSize)
+    channel.read(header, 0)
+    val magic = java.util.Arrays.copyOf(header.array, Magic.length)
+    if (!java.util.Arrays.equals(magic, Magic))
+      throw new IllegalArgumentException("SnapshotFile: not a snapshot file")
+    val version = header.get(Magic.length) & 0xff
+    if (version != Version)
+      throw new IllegalArgumentException("SnapshotFile: unsupported version " + version)
+  }
+
+  // path の局面を順に f に渡す。渡した数を返す。
+  def foreach(path: Path, chunkSize: Int = DefaultChunkSize)(f: TetrisWorld => Unit): Long = {
+    val channel = FileChannel.open(path, StandardOpenOption.READ)
+    try {
+      checkHeader(channel)
+      val size = channel.size
+      var region: MappedByteBuffer = null
+      var regionStart = 0L
+      // pos から n バイトが写した範囲に入るようにする。ファイルに足りなければ false。
+      def ensure(pos: Long, n: Int): Boolean =
+        if (pos + n > size) false
+        else {
+          if (region == null || pos < regionStart || pos + n > regionStart + region.capacity) {
+            regionStart = pos
+            region = channel.map(FileChannel.MapMode.READ_ONLY, pos, math.min(size - pos, math.max(chunkSize, n).toLong))
+          }
+          true
+        }
+      var pos = HeaderSize.toLong
+      var count = 0L
+      var done = false
+      while (!done) {
+        if (!ensure(pos, 4)) done = true
+        else {
+          val n = region.getInt((pos - regionStart).toInt)
+          if (n <= 0 || !ensure(pos, 4 + n)) done = true
+          else {
+            region.position((pos - regionStart).toInt + 4)
+            f(Snapshot.read(region))
+            pos += 4 + n
+            count += 1
+          }
+        }
+      }
+      count
+    } finally channel.close()
+  }
+}
+
+// Snapshot と SnapshotFile のテスト（runMain tetris.SnapshotTest）
+object SnapshotTest extends App {
+  // Snapshot（局面のバイナリ形式）
+  println("Snapshot")
+  val snapshotWorld = Iterator.iterate(TetrisWorld.start(10, 20, 42))(_.hardDrop).drop(5).next()
+  println(Snapshot.decode(Snapshot.encode(snapshotWorld)) == snapshotWorld)
+  println(Snapshot.encode(snapshotWorld).length == Snapshot.size(snapshotWorld))
+
+  // SnapshotFile（追記して閉じ、開き直して書き足す。範囲は小さくして、何度も写し直す）
+  println("SnapshotFile")
+  val snapshotPath = java.nio.file.Files.createTempFile("tetris", ".twsf")
+  val snapshotWorlds = Iterator.iterate(TetrisWorld.start(10, 20, 42))(_.hardDrop).take(10).toVector
+  val snapshotFile1 = SnapshotFile.open(snapshotPath, chunkSize = 256)
+  snapshotWorlds.take(6).foreach(snapshotFile1.append)
+  snapshotFile1.close()
+  val snapshotFile2 = SnapshotFile.open(snapshotPath, chunkSize = 256)
+  snapshotWorlds.drop(6).foreach(snapshotFile2.append)
+  snapshotFile2.close()
+  val snapshotRead = scala.collection.mutable.ArrayBuffer[TetrisWorld]()
+  println(SnapshotFile.foreach(snapshotPath, chunkSize = 256)(snapshotRead += _) == snapshotWorlds.length)
+  println(snapshotRead == snapshotWorlds)
+  // 閉じたファイルには、写した範囲の残りの 0 が残らない
+  println(java.nio.file.Files.size(snapshotPath) == 8 + snapshotWorlds.map(w => 4 + Snapshot.size(w)).sum)
+  // 長さを書く前に止まったファイル：書きかけの局面は読まない
+  val snapshotTorn = java.nio.channels.FileChannel.open(snapshotPath, java.nio.file.StandardOpenOption.WRITE)
+  val snapshotBody = Snapshot.encode(snapshotWorlds.head)
+  snapshotTorn.write(java.nio.ByteBuffer.wrap(new Array[Byte](4)), snapshotTorn.size)
+  snapshotTorn.write(java.nio.ByteBuffer.wrap(snapshotBody), snapshotTorn.size)
+  snapshotTorn.close()
+  println(SnapshotFile.foreach(snapshotPath, chunkSize = 256)(_ => ()) == snapshotWorlds.length)
+  val snapshotFile3 = SnapshotFile.open(snapshotPath, chunkSize = 256)
+  snapshotFile3.append(snapshotWorlds.last)
+  snapshotFile3.close()
+  println(SnapshotFile.foreach(snapshotPath, chunkSize = 256)(_ => ()) == snapshotWorlds.length + 1)
+  java.nio.file.Files.delete(snapshotPath)
+}
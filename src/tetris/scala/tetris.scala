@@ -11,100 +11,232 @@
 
 package tetris
 
-import scala.util.Random
+import java.awt.event.KeyEvent
 
-import sgeometry.Pos
-import sdraw.{World, Color, Transparent, HSB}
+import sdraw.{World, Color, HSB, Recorder}
 
 import tetris.{ShapeLib => S}
 
 // テトリスを動かすための関数
-case class TetrisWorld(piece: ((Int, Int), S.Shape), pile: S.Shape) extends World() {
+//   pile は Board（ビットボード）で持ち、描画などで必要なときだけ S.Shape に戻す
+//   次のテトロミノは、このゲームだけの列 pieces（7-bag）から出す
+case class TetrisWorld(piece: ((Int, Int), S.Shape), board: Board, pieces: Pieces) extends World() {
+
+  // ShapeLib の形の pile（互換のため。描画や操作は board を使い、ここは呼ばない）
+  //   作るのに井戸全体の分の List を作るので、一度だけ作って覚えておく
+  lazy val pile: S.Shape = board.toShape
+
+  // piece をそのまま落としたときに止まる行（ゴースト・ハードドロップ用）
+  //   board.landingRow は piece の幅の分だけ見ればよいので、world ができるたびに一度だけ求めておく
+  lazy val landingY: Int = board.landingRow(Orientations.packed(piece._2), piece._1._1, piece._1._2)
+
+  // 局面の Zobrist ハッシュ：pile の分は board が積むたびに更新して持っているので、piece の分を xor するだけ
+  lazy val zobrist: Long = board.zobrist ^ (Orientations.of(piece._2) match {
+    case Some(o) => Zobrist.piece(o.kind, o.rotation, piece._1._1, piece._1._2)
+    case None => Rng.mix64(piece.hashCode)
+  })
+
+  // piece の落ちる先（ゴースト）
+  def ghost: ((Int, Int), S.Shape) = ((piece._1._1, landingY), piece._2)
 
   // マウスクリックは無視
-  def click(p: sgeometry.Pos): World = this
+  def click(p: sgeometry.Pos): TetrisWorld = this
 
   // ブロックの描画
   def drawRect(x: Int, y: Int, w: Int, h: Int, c: Color): Boolean = {
-    canvas.drawRect(Pos(A.BlockSize * x, A.BlockSize * y), A.BlockSize * w, A.BlockSize * h, c)
+    canvas.drawRect(A.BlockSize * x, A.BlockSize * y, A.BlockSize * w, A.BlockSize * h, c)
   }
 
   // shape の描画（与えられた位置）
+  //   行と列を添字で数えながらたどり、描画のためにタプルやリストを作らない
   def drawShape(pos: (Int, Int), shape: S.Shape): Boolean = {
-    val pos_colors = shape.zipWithIndex.flatMap(row_i => {
-      val (row, i) = row_i
-      row.zipWithIndex.map(box_j => {
-        val (color, j) = box_j
-        (j, i, color)
-      })
-    })
-
-    val (x, y) = pos
-    pos_colors.forall(pos_color => {
-      val (dx, dy, color) = pos_color
-      drawRect(x + dx, y + dy, 1, 1, color)
-    })
+    val x = pos._1
+    val y = pos._2
+    var rows = shape
+    var i = 0
+    while (rows.nonEmpty) {
+      var row = rows.head
+      var j = 0
+      while (row.nonEmpty) {
+        drawRect(x + j, y + i, 1, 1, row.head)
+        row = row.tail
+        j += 1
+      }
+      rows = rows.tail
+      i += 1
+    }
+    true
   }
 
   // shape の描画（原点）
   def drawShape00(shape: S.Shape): Boolean = drawShape((0, 0), shape)
 
   // ゲーム画面の描画
-  val CanvasColor = HSB(0, 0, 0.1f)
+  def CanvasColor: Color = TetrisWorld.CanvasColor
 
+  // 前のフレームと比べて、色の変わったマスだけを描き直す
+  //   piece の落ちる先には、piece の影（ゴースト）を描く
   def draw(): Boolean = {
-    val (pos, shape) = piece
-    canvas.drawRect(Pos(0, 0), canvas.width, canvas.height, CanvasColor) &&
-    drawShape00(pile) &&
-    drawShape(pos, shape)
+    val x = piece._1._1
+    val y = piece._1._2
+    val shape = piece._2
+    val cells = canvas.cells(board.width, board.height, A.BlockSize)
+    var i = 0
+    while (i < board.height) {
+      var j = 0
+      while (j < board.width) {
+        cells.set(j, i, if (board.isEmpty(i, j)) CanvasColor else board.color(i, j))
+        j += 1
+      }
+      i += 1
+    }
+    val p = Orientations.packed(shape)
+    val g = landingY
+    i = 0
+    while (i < p.height) {
+      var j = 0
+      while (j < p.width) {
+        if (!p.isEmpty(i, j)) cells.set(x + j, g + i, TetrisWorld.GhostColor)
+        j += 1
+      }
+      i += 1
+    }
+    i = 0
+    while (i < p.height) {
+      var j = 0
+      while (j < p.width) {
+        if (!p.isEmpty(i, j)) cells.set(x + j, y + i, p.color(i, j))
+        j += 1
+      }
+      i += 1
+    }
+    cells.render()
   }
 
   // 1, 4, 7. tick
-  // 目的：
-  def tick(): World = {
-    TetrisWorld(piece, pile)
+  // 目的：piece を 1 段落とす。落とせなければ pile に積んで揃った行を消し、次の piece を出す。
+  def tick(): TetrisWorld = {
+    val ((x, y), shape) = piece
+    val moved = copy(piece = ((x, y + 1), shape))
+    if (gameOver) this
+    else if (!collision(moved)) moved
+    else lock(x, y, shape)
+  }
+
+  // piece を (x, y) で pile に積んで揃った行を消し、次の piece を出す
+  def lock(x: Int, y: Int, shape: S.Shape): TetrisWorld = {
+    val locked = board.combineAt(Orientations.packed(shape), x, y).eraseFullRows
+    val (kind, rest) = pieces.next
+    TetrisWorld(TetrisWorld.spawn(locked.width, kind), locked, rest)
   }
 
   // 2, 5. keyEvent
-  // 目的：
-  def keyEvent(key: String): World = {
-    TetrisWorld(piece, pile)
+  // 目的：左右キーで piece を動かし、上キーで回転する。動かせないときは何もしない。
+  //   スペースキーで piece を一番下まで落として積む（ハードドロップ）。
+  def keyEvent(key: String): TetrisWorld = key match {
+    case "RIGHT" => pressKey(KeyEvent.VK_RIGHT)
+    case "LEFT"  => pressKey(KeyEvent.VK_LEFT)
+    case "UP"    => pressKey(KeyEvent.VK_UP)
+    case "SPACE" => pressKey(KeyEvent.VK_SPACE)
+    case _       => this
   }
 
+  // キーコードで受け取る（キーの名前を作らずに済む）
+  override def keyCode(code: Int): Option[World] = Some(pressKey(code))
+
+  def pressKey(code: Int): TetrisWorld = {
+    val ((x, y), shape) = piece
+    if (code == KeyEvent.VK_SPACE) hardDrop
+    else {
+      val next = code match {
+        case KeyEvent.VK_RIGHT => copy(piece = ((x + 1, y), shape))
+        case KeyEvent.VK_LEFT  => copy(piece = ((x - 1, y), shape))
+        case KeyEvent.VK_UP    => copy(piece = ((x, y), Orientations.rotated(shape)))
+        case _                 => this
+      }
+      if (collision(next)) this else next
+    }
+  }
+
+  // piece を落ちる先（landingY）まで一度に落として積む
+  def hardDrop: TetrisWorld =
+    if (gameOver) this else lock(piece._1._1, landingY, piece._2)
+
   // 3. collision
-  // 目的：
+  // 目的：world の piece が井戸からはみ出すか、pile と重なるかを調べる
   def collision(world: TetrisWorld): Boolean = {
-    false
+    val ((x, y), shape) = world.piece
+    world.board.collidesAt(Orientations.packed(shape), x, y)
   }
 
+  // 出たばかりの piece が置けなければゲームオーバー
+  def gameOver: Boolean = collision(this)
+
   // 6. eraseRows
-  // 目的：
+  // 目的：pile から揃った行を取り除き、上に空の行を補う
   def eraseRows(pile: S.Shape): S.Shape = {
-    pile
+    Board.fromShape(pile).eraseFullRows.toShape
+  }
+}
+
+object TetrisWorld {
+  // 井戸の背景の色
+  val CanvasColor: Color = HSB(0, 0, 0.1f)
+
+  // ゴースト（piece の落ちる先）の色
+  val GhostColor: Color = HSB(0, 0, 0.25f)
+
+  // pile を List[List[Color]] で与えて作る（テトロミノの列も与えて、同じゲームを作り直せるようにする）
+  def apply(piece: ((Int, Int), S.Shape), pile: S.Shape, pieces: Pieces): TetrisWorld =
+    TetrisWorld(piece, Board.fromShape(pile), pieces)
+
+  // 新しいテトロミノの出る列
+  def spawnX(width: Int): Int = width / 2 - 1
+
+  // kind 番目のテトロミノを、幅 width の井戸の上端の中央に出す
+  def spawn(width: Int, kind: Int): ((Int, Int), S.Shape) =
+    ((spawnX(width), 0), Orientations(kind, 0).shape)
+
+  // 種 seed から始めるゲーム。A もリプレイもこれで始めるので、種が同じなら同じゲームになる。
+  def start(width: Int, height: Int, seed: Long): TetrisWorld = initial(width, height, Rng(seed))
+
+  // 空の井戸から、乱数 rng の列で始める。preview 個先までのテトロミノが分かる。
+  def initial(width: Int, height: Int, rng: Rng, preview: Int = Pieces.DefaultPreview): TetrisWorld = {
+    val (kind, rest) = Pieces(rng, preview).next
+    TetrisWorld(spawn(width, kind), Board.empty(width, height), rest)
   }
 }
 
 // ゲームの実行
 object A extends App {
   // ゲームウィンドウとブロックのサイズ
-  val WellWidth = 10
-  val WellHeight = 10
-  val BlockSize = 30
+  //   final にして定数にしておくと、A を実行していないとき（ベンチマークなど）も値が読める
+  final val WellWidth = 10
+  final val WellHeight = 10
+  final val BlockSize = 30
 
-  // 新しいテトロミノの作成
-  val r = new Random()
+  // 乱数の種。-Dtetris.seed=42 のように与えると、同じ順にテトロミノが出る。
+  val seed = sys.props.get("tetris.seed").map(_.toLong).getOrElse(System.nanoTime())
 
+  // 次に出るテトロミノの列
+  var pieces = Pieces(Rng(seed))
+
+  // 新しいテトロミノの作成（列から 1 つ取り出す）
   def newPiece(): ((Int, Int), S.Shape) = {
-    val pos = (WellWidth / 2 - 1, 0)
-    (pos,
-     List.fill(r.nextInt(4))(0).foldLeft(S.random())((shape, _) => shape))
+    val (kind, rest) = pieces.next
+    pieces = rest
+    TetrisWorld.spawn(WellWidth, kind)
   }
 
   // 最初のテトロミノ
   val piece = newPiece()
 
-  // ゲームの初期値
-  val world = TetrisWorld(piece, List.fill(WellHeight)(List.fill(WellWidth)(Transparent)))
+  // ゲームの初期値（TetrisWorld.start(WellWidth, WellHeight, seed) と同じ）
+  val world = TetrisWorld(piece, Board.empty(WellWidth, WellHeight), pieces)
+
+  // -Dtetris.record=game.rec を与えると、ゲームを記録する（Replay で再生できる）
+  sys.props.get("tetris.record").foreach(file =>
+    world.recorder = Some(new Recorder(new java.io.FileOutputStream(file), seed, WellWidth, WellHeight)))
 
   // ゲームの開始
   world.bigBang(BlockSize * WellWidth, BlockSize * WellHeight, 1)
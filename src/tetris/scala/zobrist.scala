@@ -0,0 +1,173 @@
+package tetris
+
+// Zobrist ハッシュ：井戸のマスや piece の置き方ごとに乱数を決めておき、その排他的論理和をとる
+//   ブロックを 1 つ足したり引いたりするときは、そのマスの乱数を xor するだけで済む。
+//   乱数は表に持たず、番号を Rng.mix64 に通して作る（井戸の大きさが決まっていなくても使える）。
+object Zobrist {
+  private val CellSeed = 0x3c6ef372fe94f82bL
+  private val PieceSeed = 0xa54ff53a5f1d36f1L
+  private val QueueSeed = 0x510e527fade682d1L
+  private val Odd = 0x9e3779b97f4a7c15L
+
+  // i 行 j 列のマスにブロックがあるときの乱数
+  def cell(i: Int, j: Int): Long = Rng.mix64(CellSeed + ((i.toLong << 6) | j) * Odd)
+
+  // i 行目のブロック（ビット列 mask）の分
+  def row(i: Int, mask: Long): Long = {
+    var h = 0L
+    var rest = mask
+    while (rest != 0) {
+      h ^= cell(i, java.lang.Long.numberOfTrailingZeros(rest))
+      rest &= rest - 1
+    }
+    h
+  }
+
+  // kind 番目の piece を向き rotation で (x, y) に置いたときの乱数
+  def piece(kind: Int, rotation: Int, x: Int, y: Int): Long =
+    Rng.mix64(PieceSeed + ((((kind.toLong << 2) | rotation) << 40) ^ ((x.toLong & 0xfffff) << 20) ^ (y.toLong & 0xfffff)) * Odd)
+
+  // 先読みする piece の列（queue の index 番目から depth 個）の乱数。同じ井戸でも、残りの列が違えば別の局面。
+  def queue(queue: IndexedSeq[Int], index: Int, depth: Int): Long = {
+    var h = QueueSeed + depth
+    var i = index
+    while (i < index + depth && i < queue.length) {
+      h = Rng.mix64(h * Odd + queue(i))
+      i += 1
+    }
+    h
+  }
+}
+
+// 大きさ 2^bits の置換表：局面のハッシュから、その局面の評価を引く
+//   キー・評価・残りの深さ・世代を、それぞれプリミティブの配列に持つ（箱詰めしない）。
+//   キーの位置から Bucket 個の枠を順に見て（開番地法）、空きか同じキーの枠に書く。
+//   どれも埋まっていれば、古い探索の枠を先に、その中でも読んだ深さの浅い枠を追い出す。
+//   ひとつのスレッドで使うこと。
+final class TranspositionTable(val bits: Int = 16) {
+  require(TranspositionTable.Bucket <= (1 << bits) && bits <= 28, "TranspositionTable: bits must be within 2..28")
+
+  import TranspositionTable.Bucket
+
+  val capacity: Int = 1 << bits
+  private val mask = capacity - 1
+  private val keys = new Array[Long](capacity) // 0 は空き
+  private val values = new Array[Double](capacity)
+  private val depths = new Array[Byte](capacity)
+  private val ages = new Array[Byte](capacity)
+  private var age: Byte = 0
+
+  var hits = 0L
+  var misses = 0L
+
+  // 0 は空きの印なので、キーが 0 のときは別の値にする
+  private def fix(key: Long): Long = if (key == 0) 1L else key
+
+  private def slot(key: Long): Int = (key ^ (key >>> 32)).toInt & mask
+
+  // key の評価。なければ NaN。
+  def get(key0: Long): Double = {
+    val key = fix(key0)
+    var i = slot(key)
+    var n = 0
+    while (n < Bucket) {
+      val k = keys(i)
+      if (k == key) {
+        hits += 1
+        ages(i) = age
+        return values(i)
+      }
+      if (k == 0) n = Bucket
+      i = (i + 1) & mask
+      n += 1
+    }
+    misses += 1
+    Double.NaN
+  }
+
+  // key の評価 value を覚える。depth はその評価のために読んだ深さ（追い出す順を決めるのに使う）。
+  def put(key0: Long, depth: Int, value: Double): Unit = {
+    val key = fix(key0)
+    var i = slot(key)
+    var victim = -1
+    var n = 0
+    while (n < Bucket) {
+      val k = keys(i)
+      if (k == 0 || k == key) {
+        victim = i
+        n = Bucket
+      } else if (victim < 0 || worse(i, victim)) victim = i
+      i = (i + 1) & mask
+      n += 1
+    }
+    keys(victim) = key
+    values(victim) = value
+    depths(victim) = math.min(depth, Byte.MaxValue).toByte
+    ages(victim) = age
+  }
+
+  // 枠 a の方が、枠 b より追い出してよいか
+  private def worse(a: Int, b: Int): Boolean = {
+    val oldA = ages(a) != age
+    val oldB = ages(b) != age
+    if (oldA != oldB) oldA else depths(a) < depths(b)
+  }
+
+  // 新しい探索を始める。前の探索の枠は残るが、先に追い出される。
+  //   世代は 1 バイトなので 256 回で一巡する。一巡したときは、256 回前の枠が今の探索のものに
+  //   見えないよう、すべての枠を前の世代にする（256 回に 1 度、表を一通りなめるだけ）。
+  def newSearch(): Unit = {
+    age = (age + 1).toByte
+    if (age == 0) java.util.Arrays.fill(ages, (-1).toByte)
+  }
+
+  def clear(): Unit = {
+    java.util.Arrays.fill(keys, 0L)
+    hits = 0
+    misses = 0
+  }
+}
+
+object TranspositionTable {
+  // 1 つのキーで見る枠の数
+  val Bucket = 4
+}
+
+// TranspositionTable のテスト（runMain tetris.TranspositionTableTest）
+object TranspositionTableTest extends App {
+  // 枠が 4 つしかない表（どのキーも同じ 4 つの枠を見る）に、深く読んだ 4 つを覚えてから
+  // searches 回探索を進め、浅い 4 つを覚える。古い探索の枠が先に追い出されれば、浅い 4 つがすべて残る。
+  def replacesOld(searches: Int): Boolean = {
+    val table = new TranspositionTable(bits = 2)
+    (1L to 4L).foreach(k => table.put(k, 10, k.toDouble))
+    (1 to searches).foreach(_ => table.newSearch())
+    (5L to 8L).foreach(k => table.put(k, 1, k.toDouble))
+    (5L to 8L).forall(k => table.get(k) == k.toDouble)
+  }
+
+  // 覚えた評価を引く・同じキーは上書きする・なければ NaN
+  println("TranspositionTable")
+  val table = new TranspositionTable(bits = 4)
+  println(table.get(42L).isNaN && table.misses == 1)
+  table.put(42L, 3, 1.5)
+  println(table.get(42L) == 1.5 && table.hits == 1)
+  table.put(42L, 3, 2.5)
+  println(table.get(42L) == 2.5)
+  // 0 は空きの印だが、キー 0 も覚えられる
+  table.put(0L, 1, -1.0)
+  println(table.get(0L) == -1.0 && table.get(42L) == 2.5)
+  // 同じ探索の中では、深く読んだ枠が残る
+  val shallow = new TranspositionTable(bits = 2)
+  (1L to 4L).foreach(k => shallow.put(k, if (k == 1) 1 else 10, k.toDouble))
+  shallow.put(5L, 5, 5.0)
+  println(shallow.get(1L).isNaN && (2L to 5L).forall(k => shallow.get(k) == k.toDouble))
+  table.clear()
+  println(table.get(42L).isNaN && table.hits == 0)
+
+  println("TranspositionTable generations")
+  println(replacesOld(1))
+  println(replacesOld(255))
+  println(replacesOld(256))
+  println(replacesOld(257))
+  println(replacesOld(1000))
+}